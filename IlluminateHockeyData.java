@@ -1,31 +1,71 @@
 import java.util.*;
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
 import java.time.*;
+import java.lang.management.*;
+import java.net.*;
+import java.net.http.*;
+import com.sun.net.httpserver.*;
+import javax.management.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+import java.util.regex.*;
+import java.util.stream.*;
 
 ///////////////////////////////////////////////////////////////////////////////////////////////////
-class HockeyPlayer implements Comparable<HockeyPlayer>{
+class HockeyPlayer{
 	//fields
 	private String lastName;
-	private String position;
+	private PlayerPosition position;
 	private String birthplace;
 	private int [] stats;
 	private ArrayList<HockeyPlayer> roster;
 	private ArrayList<HockeyPlayer> rosterSorted;
 	private ArrayList<String> rosterBP;
+	private RosterStore rosterStore;
+	private long rosterVersion;
+	private long rosterBPVersion;
 	private final String[] HP_CONSTANTS = {"Last Name", "Position", "Birthplace"};
-	private final String[] GOALIE_STATS = {"Shots Against", "Goals Against", "Saves"};
-	private final String[] SKATER_STATS = {"Goals", "Assists", "Points", "+/-"};
-	private static int sortHPBy;
+	private final String[] GOALIE_STATS = {"Shots Against", "Goals Against", "Saves", DerivedStats.GOALIE_NAMES[0], DerivedStats.GOALIE_NAMES[1]};
+	private final String[] SKATER_STATS = {"Goals", "Assists", "Points", "+/-", DerivedStats.SKATER_NAMES[0], DerivedStats.SKATER_NAMES[1]};
+	private static final StatComparator[] STAT_COMPARATORS = new StatComparator[RosterStore.MAX_STATS + 1];
+	static{
+		for(int i = 1; i < STAT_COMPARATORS.length; i++){
+			STAT_COMPARATORS[i] = new StatComparator(i - 1);
+		}
+	}
+	private int sortHPBy;
 	
 	//constructors
 	/**
-	* no-argument constructor that initilizes the roster and rosterBP fields
+	* no-argument constructor that initilizes the roster, rosterStore, and rosterBP fields
 	*/
 	public HockeyPlayer(){
 		setRoster();
+		setRosterStore();
 		setRosterBP();
 	}
 	
+	/**
+	* constructor that initilizes the rosterStore field from a roster CSV file (roster and rosterBP are derived on first use)
+	* @param Path CSV file read by RosterLoader
+	*/
+	public HockeyPlayer(Path rosterFile) throws IOException{
+		setRoster(rosterFile);
+	}
+	
+	/**
+	* constructor that initilizes the rosterStore field from an already loaded store (roster and rosterBP are derived on first use)
+	* @param RosterStore players of the team roster
+	*/
+	public HockeyPlayer(RosterStore rosterStore){
+		setRosterStore(rosterStore);
+	}
+	
 	/**
 	* constructor that initilalizes a hockey player's unique identifiers
 	* @param String last name of player
@@ -34,6 +74,17 @@ class HockeyPlayer implements Comparable<HockeyPlayer>{
 	* @param int... position-specific stats of player
 	*/
 	public HockeyPlayer(String lastName, String position, String birthplace, int... stats){
+		this(lastName, PlayerPosition.parse(position), birthplace, stats);
+	}
+	
+	/**
+	* constructor that initilalizes a hockey player's unique identifiers from an already parsed position
+	* @param String last name of player
+	* @param PlayerPosition position
+	* @param String birthplace of player
+	* @param int... position-specific stats of player
+	*/
+	public HockeyPlayer(String lastName, PlayerPosition position, String birthplace, int... stats){
 		this.lastName = lastName;
 		this.position = position;
 		this.birthplace = birthplace;
@@ -64,25 +115,35 @@ class HockeyPlayer implements Comparable<HockeyPlayer>{
 	}
 
 	/**
-	* a method that defines how to sort HockeyPlayers numerically by a stat
-	* @param HockeyPlayer the player to which we are comparing
-	* @return int -1 if original player less than other player, 0 if original and other player equal, 1 if original player greater than other player (in reference to a specific stat)
+	* a method that returns the (shared, stateless) comparator that sorts HockeyPlayers numerically by a stat
+	* @param int a number that corresponds to a player stats array index value that we are sorting
+	* @return Comparator<HockeyPlayer> ascending order of that stat (players without the stat sort last)
 	*/
-	@Override
-    	public int compareTo(HockeyPlayer other) {
-    		if(this.getStats().length < sortHPBy){
-    			return 1;	
-    		}
-		else if (this.getStats()[sortHPBy-1] < other.getStats()[sortHPBy-1]) {
-			return -1;
-		}
-		else if (this.getStats()[sortHPBy-1] == other.getStats()[sortHPBy-1]) { 
-			return 0;
+	public static Comparator<HockeyPlayer> getStatComparator(int sortHPBy){
+		if(sortHPBy < 1 || sortHPBy > RosterStore.MAX_STATS){
+			throw new IllegalArgumentException("No stat to sort by at " + sortHPBy);
 		}
-		else{
-			return 1;	
+		return STAT_COMPARATORS[sortHPBy];
+	}
+	
+	//compares one stats array index; it holds no mutable state, so sorts on different stats can run at the same time
+	private static final class StatComparator implements Comparator<HockeyPlayer>{
+		private final int stat;
+		
+		private StatComparator(int stat){
+			this.stat = stat;
+		}
+		
+		@Override
+		public int compare(HockeyPlayer a, HockeyPlayer b){
+			boolean aHasStat = a.getStats().length > stat;
+			boolean bHasStat = b.getStats().length > stat;
+			if(aHasStat != bHasStat){
+				return aHasStat ? -1 : 1;
+			}
+			return aHasStat ? Integer.compare(a.getStats()[stat], b.getStats()[stat]) : 0;
 		}
-    	}
+	}
     	
 	
 	//setters
@@ -99,7 +160,7 @@ class HockeyPlayer implements Comparable<HockeyPlayer>{
 	* @param String position of player
 	*/
 	public void setPosition(String position){
-		this.position = position;	
+		this.position = PlayerPosition.parse(position);	
 	}
 	
 	/**
@@ -124,12 +185,14 @@ class HockeyPlayer implements Comparable<HockeyPlayer>{
 	*/
 	public void setRoster(ArrayList<HockeyPlayer> players){
 		roster = new ArrayList<HockeyPlayer>(players);	
+		rosterStore = null;
 	}
 	
 	/**
 	* method that initializes the team roster (potentially a call to a database)
 	*/
 	public void setRoster(){
+		rosterStore = null;
 		roster = new ArrayList<HockeyPlayer>();
 		roster.add(new HockeyPlayer("Ovechkin", "Forward, LW", "Russia", 49, 38, 87, 3, 0));
 		roster.add(new HockeyPlayer("Vrana", "Forward, LW", "Czech Republic", 13, 14, 27, 2, 1));
@@ -165,28 +228,60 @@ class HockeyPlayer implements Comparable<HockeyPlayer>{
 	}
 	
 	
+	/**
+	* method that streams the team roster from a CSV file into rosterStore (roster and rosterBP are derived on first use)
+	* @param Path CSV file read by RosterLoader
+	*/
+	public void setRoster(Path rosterFile) throws IOException{
+		setRosterStore(RosterLoader.load(rosterFile));
+	}
+	
+	/**
+	* method that copies the roster into columnar form (row i of the store is roster index i)
+	*/
+	public void setRosterStore(){
+		rosterStore = RosterStore.fromRoster(getRoster());
+		rosterVersion = rosterStore.getVersion();
+	}
+	
+	/**
+	* method that initializes the rosterStore field and clears roster and rosterBP, which are then derived from it on first use
+	* @param RosterStore players of the team roster
+	*/
+	public void setRosterStore(RosterStore rosterStore){
+		this.rosterStore = rosterStore;
+		rosterVersion = rosterStore.getVersion();
+		roster = null;
+		rosterBP = null;
+	}
+	
+	/**
+	* method that sorts a copy of the roster by sortHPBy (a stable sort that runs in parallel on large rosters)
+	*/
 	public void setRosterSorted(){
-		rosterSorted = new ArrayList<HockeyPlayer>(getRoster());
-		Collections.sort(rosterSorted);
+		long start = RosterMetrics.start();
+		HockeyPlayer[] players = getRoster().toArray(new HockeyPlayer[0]);
+		Arrays.parallelSort(players, getStatComparator(sortHPBy));
+		rosterSorted = new ArrayList<HockeyPlayer>(Arrays.asList(players));
+		RosterMetrics.record(RosterMetrics.ROSTER_SORT, start, players.length, players.length);
 	}
 	
+	/**
+	* method that initializes rosterBP with the distinct birthplaces of the roster in alphabetical order
+	* (read from the rosterStore birthplace dictionary, or hashed from the roster list when there is no store)
+	*/
 	public void setRosterBP(){
-	try{
-		rosterBP = new ArrayList<String>();
-		rosterBP.add(roster.get(0).getBirthplace());
-		for(int i = 1; i< roster.size(); i++){
-			if(rosterBP.contains(roster.get(i).getBirthplace()) == false){
-				rosterBP.add(roster.get(i).getBirthplace());	
+		RosterDictionary birthplaces;
+		if(rosterStore != null){
+			birthplaces = rosterStore.getBirthplaces();
+		}
+		else{
+			birthplaces = new RosterDictionary();
+			for(HockeyPlayer player : getRoster()){
+				birthplaces.increment(birthplaces.encode(player.getBirthplace()));
 			}
 		}
-		Collections.sort(rosterBP);
-	}
-	catch(NullPointerException np){
-		System.out.println("Null Pointer Exception");	
-	}
-	catch(Exception e){
-		System.out.println("Exception: " + e);	
-	}
+		rosterBP = new ArrayList<String>(Arrays.asList(birthplaces.getSortedValues()));
 	}
 	
 	public void setSortHPBy(int sortHPBy){
@@ -207,6 +302,10 @@ class HockeyPlayer implements Comparable<HockeyPlayer>{
 	* @return String position
 	*/
 	public String getPosition(){
+		return position.getLabel();	
+	}
+	
+	public PlayerPosition getPlayerPosition(){
 		return position;	
 	}
 	
@@ -223,6 +322,10 @@ class HockeyPlayer implements Comparable<HockeyPlayer>{
 	}
 	
 	public ArrayList<HockeyPlayer> getRoster(){
+		if(rosterStore != null && (roster == null || rosterVersion != rosterStore.getVersion())){
+			rosterVersion = rosterStore.getVersion();
+			roster = rosterStore.toPlayers();
+		}
 		return roster;	
 	}
 	
@@ -231,9 +334,17 @@ class HockeyPlayer implements Comparable<HockeyPlayer>{
 	}
 	
 	public ArrayList<String> getRosterBP(){
+		if(rosterStore != null && (rosterBP == null || rosterBPVersion != rosterStore.getVersion())){
+			rosterBPVersion = rosterStore.getVersion();
+			setRosterBP();
+		}
 		return rosterBP;	
 	}
 	
+	public RosterStore getRosterStore(){
+		return rosterStore;	
+	}
+	
 	public String[] getHP_CONSTANTS(){
 		return HP_CONSTANTS;	
 	}
@@ -252,374 +363,7464 @@ class HockeyPlayer implements Comparable<HockeyPlayer>{
 }
 
 ///////////////////////////////////////////////////////////////////////////////////////////////////
-///////////////////////////////////////////////////////////////////////////////////////////////////
-class Output{
-	//fields
-	private BufferedReader reader;
-	private HockeyPlayer hp; 
-	private ArrayList<HockeyPlayer> justG; 
-	private ArrayList<HockeyPlayer> justSk; 
-	private final String[] MAIN_MENU_OPTS = {"Display Roster", "Sort Stats", "Query Players"};
-	private final String MAIN_TITLE = "WELCOME TO 2017-2018 WASHINGTON CAPITALS' (SOME) REGULAR SEASON STATS WIZARD!";
+/**
+* the positions a player can hold; RosterStore keeps each player's position as a one-byte code (the ordinal),
+* so telling goalies from skaters and filtering by position compare small integers instead of strings
+*/
+enum PlayerPosition{
+	LEFT_WING("Forward, LW", Group.FORWARD, "LW"),
+	CENTER("Forward, C", Group.FORWARD, "C"),
+	RIGHT_WING("Forward, RW", Group.FORWARD, "RW"),
+	DEFENSE("Defense", Group.DEFENSE, null),
+	GOALIE("Goalie", Group.GOALIE, null);
 	
-	//constuctor
 	/**
-	* no-argument constructor that initializes the reader and hp fields
+	* the position without its sub-position, as the query menus offer it
 	*/
-	public Output(){
-		setReader();
-		setHP();
-		setJustG();
-		setJustSk();
+	public enum Group{
+		FORWARD("Forward"), DEFENSE("Defense"), GOALIE("Goalie");
+		
+		private final String label;
+		
+		private Group(String label){
+			this.label = label;
+		}
+		
+		public String getLabel(){
+			return label;	
+		}
 	}
 	
-	//setters
-	public void setReader(){
-		reader = new BufferedReader(new InputStreamReader(System.in));		
-	}
+	//fields
+	private static final PlayerPosition[] CODES = values();
+	private final String label;
+	private final byte[] encodedLabel;
+	private final Group group;
+	private final String subPosition;
 	
-	public void setHP(){
-		hp = new HockeyPlayer();
-		hp.setRosterBP();	
+	private PlayerPosition(String label, Group group, String subPosition){
+		this.label = label;
+		this.encodedLabel = label.getBytes(StandardCharsets.UTF_8);
+		this.group = group;
+		this.subPosition = subPosition;
 	}
 	
-	public void setHP(HockeyPlayer hp){
-		this.hp = hp;	
+	/**
+	* method that returns the position of a code
+	* @param int code from getCode()
+	* @return PlayerPosition position
+	*/
+	public static PlayerPosition fromCode(int code){
+		if(code < 0 || code >= CODES.length){
+			throw new IllegalArgumentException("No position with code " + code);
+		}
+		return CODES[code];
 	}
 	
-	public void setJustG(){
-		justG = new ArrayList<HockeyPlayer>();
-		for(int i=0; i<getHP().getRoster().size(); i++){
-			if(getHP().getRoster().get(i).getPosition().length() == 6){
-				justG.add(getHP().getRoster().get(i));	
+	/**
+	* method that returns the position named by a roster label (e.g., Forward, LW), ignoring case, or by a sub-position (LW, C, RW)
+	* @param String position
+	* @return PlayerPosition position
+	*/
+	public static PlayerPosition parse(String value){
+		for(PlayerPosition position : CODES){
+			if(position.label.equals(value)){
+				return position;
 			}
 		}
-	}
-	
-	public void setJustSk(){
-		justSk = new ArrayList<HockeyPlayer>();
-		for(int i=0; i<getHP().getRoster().size(); i++){
-			if(getHP().getRoster().get(i).getPosition().length() != 6){
-				justSk.add(getHP().getRoster().get(i));	
+		for(PlayerPosition position : CODES){
+			if(position.label.equalsIgnoreCase(value) || (position.subPosition != null && position.subPosition.equalsIgnoreCase(value))){
+				return position;
 			}
 		}
+		throw new IllegalArgumentException("Unknown position " + value + "; expected Forward, LW, Forward, C, Forward, RW, Defense, or Goalie");
 	}
-
-	//getters
-	public BufferedReader getReader(){
-		return reader;
-	}	
 	
-	public HockeyPlayer getHP(){
-		return hp;	
+	/**
+	* method that returns the code of a roster label held as UTF-8 in a byte array, so a loader creates no String for it
+	* @param byte[] buffer that holds the label
+	* @param int index of the first byte of the label
+	* @param int number of bytes in the label
+	* @return int code of the position, or -1 if the bytes are not exactly a roster label
+	*/
+	public static int codeOf(byte[] bytes, int offset, int length){
+		for(PlayerPosition position : CODES){
+			if(Arrays.equals(position.encodedLabel, 0, position.encodedLabel.length, bytes, offset, offset + length)){
+				return position.ordinal();
+			}
+		}
+		return -1;
 	}
 	
-	public ArrayList<HockeyPlayer> getJustG(){
-		return justG;	
+	/**
+	* method that returns the positions a query matches: a roster label, a group (Forward also matches Forward, LW), or a sub-position, ignoring case
+	* @param String position, group, or sub-position
+	* @return int bit mask with bit (1 << code) set for each matching position (0 if none match)
+	*/
+	public static int matching(String query){
+		int mask = 0;
+		for(PlayerPosition position : CODES){
+			if(position.label.equalsIgnoreCase(query) || position.group.label.equalsIgnoreCase(query) || (position.subPosition != null && position.subPosition.equalsIgnoreCase(query))){
+				mask |= 1 << position.ordinal();
+			}
+		}
+		return mask;
 	}
 	
-	public ArrayList<HockeyPlayer> getJustSk(){
-		return justSk;	
+	public static int count(){
+		return CODES.length;	
 	}
 	
-	public String[] getMAIN_MENU_OPTS(){
-		return MAIN_MENU_OPTS;	
+	//getters
+	public byte getCode(){
+		return (byte)ordinal();	
 	}
 	
-	public int userChoice(){
-		int userChoice = 0;
-		try{
-			System.out.print("Enter selection: ");
-			userChoice = Integer.parseInt(reader.readLine());	
-		}
-		catch(Exception e){
-			System.out.println("Exception in userChoice method: " + e + "\nTry again!");
-			userChoice();
-		}
-		return userChoice;
+	public String getLabel(){
+		return label;	
 	}
 	
-	public void mainTitle(){
-		System.out.println("\n**********************************************************************************");
-		System.out.println(MAIN_TITLE);
+	public Group getGroup(){
+		return group;	
 	}
 	
-	public void mainMenu(){
-		Output output = new Output();
-		output.mainTitle();
-		int choice = output.userOptions(MAIN_MENU_OPTS);
-		if(choice == 1){
-			Display display = new Display();
-			display.printRosterDetails();
-			mainMenu();
-		}
-		else if(choice == 2){
-			Sort sort = new Sort();
-			sort.userSortOptions();
-		}
-		else{
-			Query query = new Query();
-			query.userQueryOptions();
-			mainMenu();
-		}
+	/**
+	* method that returns the sub-position of a forward
+	* @return String LW, C, or RW, or null for defense and goalies
+	*/
+	public String getSubPosition(){
+		return subPosition;	
 	}
 	
-	public void printStats(HockeyPlayer player, int type){
-		if(type == 0){ //skater
-			System.out.println("Position: " + player.getPosition() + "\tGoals: " + player.getStats()[0] + "\tAssists: " + player.getStats()[1] + "\tPoints: " + player.getStats()[2] + "\t+/-: " + player.getStats()[3] + "\t\tName: " + player.getLastName());	
-		}
-		else{
-			System.out.println("Position: " + player.getPosition() + "\tShots Against: " + player.getStats()[0] + "\tGoals Against: " + player.getStats()[1] + "\tSaves: " + player.getStats()[2] + "\t\tName: " + player.getLastName());	
-		}
+	public boolean isGoalie(){
+		return this == GOALIE;	
 	}
 	
-	//method to determine which option (from given options), user selects
-	public int userOptions(String... OPTIONS){
-		int userChc = 0;
-		System.out.println("\n**********************************************************************************");
-		System.out.println("\nSelect an option: ");
-		for(int i = 0; i < OPTIONS.length; i++){
-			System.out.println((i+1) + "). " + OPTIONS[i]);	
-		}
-		System.out.println("\n" + (OPTIONS.length + 1) + "). " + "Exit");
-		System.out.println("\n*********************************************");
-		userChc = userChoice();
-			if(userChc < (OPTIONS.length + 1)){
-				System.out.println("  You selected:  " + OPTIONS[userChc - 1]);
-				return userChc;
-			}
-			else if(userChc == (OPTIONS.length + 1)){
-				System.out.print("  You selected: EXIT");
-				System.exit(0);
-			}
-		return 1;
+	@Override
+	public String toString(){
+		return label;	
 	}
-	
 }
 
 ///////////////////////////////////////////////////////////////////////////////////////////////////
-class Display extends Output{
+class RosterDictionary{
 	//fields
-	private final String ROSTER_HEADER = "THE 2017-2018 REGULAR SEASON ROSTER AND SOME OF THEIR STATS:\n";
+	private final HashMap<String, Integer> codes = new HashMap<String, Integer>();
+	private final ArrayList<String> values = new ArrayList<String>();
+	private final ArrayList<byte[]> encodedValues = new ArrayList<byte[]>();
+	private int[] slots = new int[16]; //code + 1 of the value hashed to each slot, 0 when empty
+	private int[] counts = new int[16];
+	private int[] sortedCodes;
 	
 	//no-argument constructor
-	public Display(){
+	public RosterDictionary(){
 	}
 	
-	//ouputs skaters (forward and defense) and goalies and some of their stats in a predetermined order
-	public void printRoster(){
-		for(HockeyPlayer player : getHP().getRoster()){
-			if(player.getStats().length == 5){
-				printStats(player, 0);	
+	/**
+	* method that returns the code of a value, assigning the next free code to a value not seen before
+	* @param String value to encode
+	* @return int code of the value
+	*/
+	public int encode(String value){
+		Integer code = codes.get(value);
+		if(code == null){
+			code = values.size();
+			codes.put(value, code);
+			values.add(value);
+			sortedCodes = null;
+			byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+			encodedValues.add(encoded);
+			if(values.size() * 2 > slots.length){
+				rehash();
 			}
 			else{
-				printStats(player, 1);
+				slots[findSlot(encoded, 0, encoded.length)] = code + 1;
 			}
 		}
+		return code;
 	}
 	
-	//outputs all players and some of their stats in a predetermined order, then loads main menu of user options
-	public void printRosterDetails(){
-		System.out.println("*****************************************************************************");
-		System.out.println(ROSTER_HEADER);
-		Display display = new Display();
-		display.printRoster();
-		mainMenu();
-	}	
-}
-
-///////////////////////////////////////////////////////////////////////////////////////////////////
-class Sort extends Output{
-	//fields
-	private final String [] sortMainMenu = {"Goalie", "Skater"};
-	private final String [] sortGoalieStats = getHP().getGOALIE_STATS();
-	private final String [] sortSkaterStats = getHP().getSKATER_STATS();
-	
-	//constructors
 	/**
-	* no-argument constructor
+	* method that returns the code of a UTF-8 value held in a byte array, so a loader only creates a String for values not seen before
+	* @param byte[] buffer that holds the value
+	* @param int index of the first byte of the value
+	* @param int number of bytes in the value
+	* @return int code of the value
 	*/
-	public Sort(){
-	}	
-
-	public int userMinMax(String stat, String minOrMax){
-		int userMinMax = 0;
-		try{
-			System.out.print("Enter " + minOrMax + " " + stat + " to include in sort (this number WILL be included): ");
-			userMinMax = Integer.parseInt(getReader().readLine());	
+	public int encode(byte[] bytes, int offset, int length){
+		int slot = slots[findSlot(bytes, offset, length)];
+		if(slot != 0){
+			return slot - 1;
 		}
-		catch(Exception e){
-			System.out.println("Exception in userMinMax method: " + e + "\nTry again!");
-			userMinMax(stat, minOrMax);
-		}
-		return userMinMax;
+		return encode(new String(bytes, offset, length, StandardCharsets.UTF_8));
 	}
 	
-	public String setBound(String boundType, String stat, int statMinMax){
-		return "As of " + LocalDate.now() + " " + stat + " " + boundType + " = " + statMinMax;	
-	}
-
-	//method to output user-defined sorted(some/all) player stats
-	public void outputSortedStat(ArrayList<HockeyPlayer> sortedRoster, int userMin, int userMax, int userChoice, int type){
-		for(HockeyPlayer h : sortedRoster){
-			try{
-				if(h.getStats()[userChoice-1] >= userMin){
-					if(h.getStats()[userChoice-1] <= userMax){
-						printStats(h, type);	
-					}
-				}	
+	//open addressing: returns the slot holding the value, or the empty slot where it belongs
+	private int findSlot(byte[] bytes, int offset, int length){
+		int hash = 1;
+		for(int i = offset; i < offset + length; i++){
+			hash = 31 * hash + bytes[i];
+		}
+		int mask = slots.length - 1;
+		for(int i = (hash ^ (hash >>> 16)) & mask; ; i = (i + 1) & mask){
+			if(slots[i] == 0){
+				return i;
 			}
-			catch(Exception e){
-				System.out.println("Exception: " + e);	
+			byte[] candidate = encodedValues.get(slots[i] - 1);
+			if(Arrays.equals(candidate, 0, candidate.length, bytes, offset, offset + length)){
+				return i;
 			}
-		}	
-	}
-
-	public void outputPlayersSorted(int userChoice, String[] sortPlayerStats, int type, String position, ArrayList<HockeyPlayer> positionType){
-		HockeyPlayer h = new HockeyPlayer(userChoice, positionType);
-		int rosterMin = h.getRosterSorted().get(0).getStats()[userChoice - 1];
-		int rosterMax = h.getRosterSorted().get(h.getRosterSorted().size() - 1).getStats()[userChoice-1];
-		System.out.println(setBound("MIN", sortPlayerStats[userChoice-1], rosterMin));
-		System.out.println(setBound("MAX", sortPlayerStats[userChoice-1], rosterMax));
-		int userMin = userMinMax(sortPlayerStats[userChoice-1], "MIN");
-		int userMax = userMinMax(sortPlayerStats[userChoice-1], "MAX");
-		System.out.println("\nCAPS " + position + " with " + userMin + " <= " + sortPlayerStats[userChoice-1] + " <= " + userMax + " are:");
-		outputSortedStat(h.getRosterSorted(), userMin, userMax, userChoice, type);
-	}
-
-	//a method that outputs a menu to select type of sorted stats to display on screen
-	public void userSortOptions(){
-		int sortGoalieOrSkater = userOptions(sortMainMenu);
-		int userChoice = 0;
-		if(sortGoalieOrSkater == 1){ 
-			userChoice = userOptions(sortGoalieStats);
-			outputPlayersSorted(userChoice, sortGoalieStats, 1, "GOALIES", getJustG());
 		}
-		else{ 
-			userChoice = userOptions(sortSkaterStats);
-			outputPlayersSorted(userChoice, sortSkaterStats, 0, "SKATERS", getJustSk());
+	}
+	
+	private void rehash(){
+		slots = new int[slots.length * 2];
+		for(int code = 0; code < encodedValues.size(); code++){
+			byte[] encoded = encodedValues.get(code);
+			slots[findSlot(encoded, 0, encoded.length)] = code + 1;
 		}
-		mainMenu();
 	}
 	
-}
-
-///////////////////////////////////////////////////////////////////////////////////////////////////
-class Query extends Output{
-	//fields
-	private final String [] queryMainMenu = {"Birthplace", "Shoots", "Position"};
-	private String [] queryBP;
-	private final String [] queryShoots = {"R", "L"};
-	private final String [] queryPositions = {"Forward", "Defense", "Goalie"}; 
-	private final String [] queryForwardPos = {"Forward", "Forward, LW", "Forward, C", "Forward, RW"};
+	/**
+	* method that returns the code of a value without assigning a new one
+	* @param String value to look up
+	* @return int code of the value, or -1 if the value is not in the dictionary
+	*/
+	public int codeOf(String value){
+		Integer code = codes.get(value);
+		return code == null ? -1 : code;
+	}
 	
 	/**
-	*no-argument constructor that initializes that queryBP field
+	* method that counts one more player holding a value
+	* @param int code of the value
 	*/
-	public Query(){
-		setQueryBP();
+	public void increment(int code){
+		if(code >= counts.length){
+			counts = Arrays.copyOf(counts, Math.max(code + 1, counts.length * 2));
+		}
+		counts[code]++;
 	}
 	
-	//setter
-	public void setQueryBP(){
-		queryBP = getHP().getRosterBP().toArray(new String[0]);
+	/**
+	* method that returns the codes ordered by their values (alphabetical), sorting only the distinct values
+	* @return int[] shared codes in value order (do not modify)
+	*/
+	public synchronized int[] getSortedCodes(){
+		if(sortedCodes == null){
+			String[] sorted = values.toArray(new String[0]);
+			Arrays.sort(sorted);
+			int[] ordered = new int[sorted.length];
+			for(int i = 0; i < sorted.length; i++){
+				ordered[i] = codes.get(sorted[i]);
+			}
+			sortedCodes = ordered;
+		}
+		return sortedCodes;
 	}
 	
-	//getters
-	public String[] getQueryMainMenu(){
-		return queryMainMenu;	
+	/**
+	* method that returns the distinct values in alphabetical order
+	* @return String[] a copy the caller may modify
+	*/
+	public String[] getSortedValues(){
+		int[] ordered = getSortedCodes();
+		String[] sorted = new String[ordered.length];
+		for(int i = 0; i < ordered.length; i++){
+			sorted[i] = values.get(ordered[i]);
+		}
+		return sorted;
 	}
 	
-	public String[] getQueryBP(){
-		return queryBP;
+	//getters
+	public String decode(int code){
+		return values.get(code);	
 	}
 	
-	public String[] getQueryShoots(){
-		return queryShoots;	
+	public int size(){
+		return values.size();	
 	}
 	
-	public String[] getQueryPositions(){
-		return queryPositions;	
+	public int getCount(int code){
+		return code < counts.length ? counts[code] : 0;	
 	}
 	
-	public String[] getQueryForwardPos(){
+	/**
+	* method that sets how many players hold a value (a store read back from a snapshot file restores its counts this way)
+	* @param int code of the value
+	* @param int number of players
+	*/
+	public void setCount(int code, int count){
+		if(code >= counts.length){
+			counts = Arrays.copyOf(counts, Math.max(code + 1, counts.length * 2));
+		}
+		counts[code] = count;
+	}
+}
+
+///////////////////////////////////////////////////////////////////////////////////////////////////
+class RosterStore{
+	//fields
+	public static final int SKATER = 0;
+	public static final int GOALIE = 1;
+	public static final int MAX_STATS = 5;
+	public static final int GOALIE_STATS = 3;
+	public static final int DERIVED_STATS = 2;
+	public static final int ALL_STATS = MAX_STATS + DERIVED_STATS;
+	private static final int INITIAL_CAPACITY = 32;
+	private static volatile boolean offHeapByDefault;
+	private final boolean offHeap;
+	private int size;
+	private String[] lastNames; //heap stores keep names as Strings; off-heap stores keep them as [length][UTF-8 bytes] in nameBytes
+	private ByteBuffer nameBytes;
+	private IntBuffer nameOffsets;
+	private int nameEnd;
+	private ByteBuffer positionCodes;
+	private IntBuffer birthplaceCodes;
+	private ByteBuffer types;
+	private ByteBuffer statCounts;
+	private IntBuffer[] statColumns;
+	private StatRangeIndex[][] sortedIndexes = new StatRangeIndex[2][ALL_STATS];
+	private IntBuffer[] derivedColumns = new IntBuffer[DERIVED_STATS];
+	private long derivedVersion = -1;
+	private RosterBitmapIndex bitmapIndex;
+	private final StatNeighborIndex[] neighborIndexes = new StatNeighborIndex[2];
+	private boolean indexed;
+	private boolean incremental;
+	private volatile long version;
+	private String label;
+	private final RosterDictionary positions = new RosterDictionary();
+	private final RosterDictionary birthplaces = new RosterDictionary();
+	
+	//constructors
+	/**
+	* no-argument constructor that initializes an empty store
+	*/
+	public RosterStore(){
+		this(INITIAL_CAPACITY);
+	}
+	
+	/**
+	* constructor that initializes an empty store with room for a number of rows, on the heap unless setOffHeapByDefault(true) was called
+	* @param int number of rows to allocate up front
+	*/
+	public RosterStore(int capacity){
+		this(capacity, offHeapByDefault);
+	}
+	
+	/**
+	* constructor that initializes an empty store with room for a number of rows, with its columns on the heap or off-heap
+	* (off-heap columns and names live in direct buffers, so a large roster adds no objects for the garbage collector to trace;
+	* the JVM caps direct memory at -XX:MaxDirectMemorySize, which defaults to the heap size)
+	* @param int number of rows to allocate up front
+	* @param boolean true to keep the columns in direct buffers
+	*/
+	public RosterStore(int capacity, boolean offHeap){
+		this.offHeap = offHeap;
+		capacity = Math.max(capacity, 1);
+		if(offHeap){
+			nameBytes = newBytes(capacity * 16).order(ByteOrder.LITTLE_ENDIAN);
+			nameOffsets = newInts(capacity);
+		}
+		else{
+			lastNames = new String[capacity];
+		}
+		positionCodes = newBytes(capacity);
+		birthplaceCodes = newInts(capacity);
+		for(PlayerPosition position : PlayerPosition.values()){ //position dictionary codes are the PlayerPosition codes
+			positions.encode(position.getLabel());
+		}
+		types = newBytes(capacity);
+		statCounts = newBytes(capacity);
+		statColumns = new IntBuffer[MAX_STATS];
+		for(int i = 0; i < MAX_STATS; i++){
+			statColumns[i] = newInts(capacity);
+		}
+	}
+	
+	/**
+	* constructor that takes over the columns read back from a snapshot file by RosterSnapshotFile (the buffers are kept, not copied)
+	* @param String[] last names, one per row
+	* @param ByteBuffer PlayerPosition codes
+	* @param IntBuffer birthplace codes
+	* @param ByteBuffer SKATER or GOALIE
+	* @param ByteBuffer number of stats of each row
+	* @param IntBuffer[] MAX_STATS stat columns
+	* @param String[] birthplaces in code order
+	* @param int[] players per birthplace code
+	* @param int[] players per position code
+	*/
+	RosterStore(String[] lastNames, ByteBuffer positionCodes, IntBuffer birthplaceCodes, ByteBuffer types, ByteBuffer statCounts, IntBuffer[] statColumns,
+			String[] birthplaceValues, int[] birthplaceCounts, int[] positionCounts){
+		this(1, false);
+		this.lastNames = lastNames;
+		restore(lastNames.length, positionCodes, birthplaceCodes, types, statCounts, statColumns, birthplaceValues, birthplaceCounts, positionCounts);
+	}
+	
+	/**
+	* constructor that takes over off-heap columns (e.g., views of a snapshot file mapped by RosterSnapshotFile, paged in by the OS on demand)
+	* @param ByteBuffer little-endian names, each an int length followed by that many UTF-8 bytes
+	* @param IntBuffer offset in nameBytes of each row's name
+	* @param ByteBuffer PlayerPosition codes
+	* @param IntBuffer birthplace codes
+	* @param ByteBuffer SKATER or GOALIE
+	* @param ByteBuffer number of stats of each row
+	* @param IntBuffer[] MAX_STATS stat columns
+	* @param String[] birthplaces in code order
+	* @param int[] players per birthplace code
+	* @param int[] players per position code
+	*/
+	RosterStore(ByteBuffer nameBytes, IntBuffer nameOffsets, ByteBuffer positionCodes, IntBuffer birthplaceCodes, ByteBuffer types, ByteBuffer statCounts,
+			IntBuffer[] statColumns, String[] birthplaceValues, int[] birthplaceCounts, int[] positionCounts){
+		this(1, true);
+		this.nameBytes = nameBytes;
+		this.nameOffsets = nameOffsets;
+		nameEnd = nameBytes.capacity();
+		restore(nameOffsets.capacity(), positionCodes, birthplaceCodes, types, statCounts, statColumns, birthplaceValues, birthplaceCounts, positionCounts);
+	}
+	
+	private void restore(int rows, ByteBuffer positionCodes, IntBuffer birthplaceCodes, ByteBuffer types, ByteBuffer statCounts, IntBuffer[] statColumns,
+			String[] birthplaceValues, int[] birthplaceCounts, int[] positionCounts){
+		this.positionCodes = positionCodes;
+		this.birthplaceCodes = birthplaceCodes;
+		this.types = types;
+		this.statCounts = statCounts;
+		this.statColumns = statColumns;
+		size = rows;
+		for(int code = 0; code < birthplaceValues.length; code++){
+			birthplaces.encode(birthplaceValues[code]);
+			birthplaces.setCount(code, birthplaceCounts[code]);
+		}
+		for(int code = 0; code < positionCounts.length; code++){
+			positions.setCount(code, positionCounts[code]);
+		}
+	}
+	
+	/**
+	* method that copies a list of players into a new store, keeping the list order as the row order
+	* @param ArrayList<HockeyPlayer> players to copy
+	* @return RosterStore store with one row per player
+	*/
+	public static RosterStore fromRoster(ArrayList<HockeyPlayer> players){
+		RosterStore store = new RosterStore(players.size());
+		for(HockeyPlayer player : players){
+			store.add(player.getLastName(), player.getPlayerPosition().getCode(), store.birthplaces.encode(player.getBirthplace()), player.getStats(), player.getStats().length);
+		}
+		return store;
+	}
+	
+	/**
+	* method that appends a player to the store (skaters carry 5 stats, goalies carry 3)
+	* @param String last name of player
+	* @param String position
+	* @param String birthplace of player
+	* @param int... position-specific stats of player
+	* @return int row number of the new player
+	*/
+	public int add(String lastName, String position, String birthplace, int... stats){
+		return add(lastName, PlayerPosition.parse(position).getCode(), birthplaces.encode(birthplace), stats, stats.length);
+	}
+	
+	/**
+	* method that appends a player whose position and birthplace are already encoded (goalies carry 3 stats, skaters carry 5)
+	* @param String last name of player
+	* @param int position code from PlayerPosition.getCode()
+	* @param int birthplace code from getBirthplaces()
+	* @param int[] buffer holding the position-specific stats of player (it is copied, so it can be reused)
+	* @param int number of stats in the buffer
+	* @return int row number of the new player
+	*/
+	public synchronized int add(String lastName, int positionCode, int birthplaceCode, int[] stats, int statCount){
+		PlayerPosition position = PlayerPosition.fromCode(positionCode);
+		if(statCount != (position.isGoalie() ? GOALIE_STATS : MAX_STATS)){
+			throw new IllegalArgumentException(lastName + " has " + statCount + " stats; a " + position.getGroup().getLabel().toLowerCase(Locale.ROOT) + " has " + (position.isGoalie() ? GOALIE_STATS : MAX_STATS));
+		}
+		ensureCapacity(size + 1);
+		int row = size;
+		if(offHeap){
+			addName(row, lastName);
+		}
+		else{
+			lastNames[row] = lastName;
+		}
+		size++;
+		positionCodes.put(row, (byte)positionCode);
+		birthplaceCodes.put(row, birthplaceCode);
+		positions.increment(positionCode);
+		birthplaces.increment(birthplaceCode);
+		int type = position.isGoalie() ? GOALIE : SKATER;
+		types.put(row, (byte)type);
+		statCounts.put(row, (byte)statCount);
+		for(int i = 0; i < statCount; i++){
+			statColumns[i].put(row, stats[i]);
+		}
+		if(incremental){
+			for(int stat = 0; stat < statCount; stat++){
+				if(sortedIndexes[type][stat] != null){
+					((LiveStatIndex)sortedIndexes[type][stat]).insert(row, stats[stat]);
+				}
+			}
+			bitmapIndex = null;
+			dropDerivedIndexes();
+		}
+		else if(indexed){
+			sortedIndexes = new StatRangeIndex[2][ALL_STATS];
+			bitmapIndex = null;
+			indexed = false;
+		}
+		Arrays.fill(neighborIndexes, null);
+		version++;
+		return row;
+	}
+	
+	/**
+	* method that changes one stat of a player, keeping built sorted indexes current
+	* (in place in O(log n) once setIncremental was called, otherwise that stat's index is rebuilt on its next use)
+	* @param int row number of the player
+	* @param int stats array index value to change
+	* @param int new value of the stat
+	*/
+	public synchronized void setStat(int row, int stat, int value){
+		if(row < 0 || row >= size || stat >= statCounts.get(row)){
+			throw new IllegalArgumentException("No stat " + stat + " in row " + row);
+		}
+		int oldValue = statColumns[stat].get(row);
+		if(statColumns[stat].isReadOnly()){ //a column of a mapped snapshot file
+			statColumns[stat] = newInts(types.capacity()).put(0, statColumns[stat], 0, size);
+		}
+		statColumns[stat].put(row, value);
+		StatRangeIndex index = sortedIndexes[types.get(row)][stat];
+		if(index instanceof LiveStatIndex){
+			((LiveStatIndex)index).update(row, oldValue, value);
+		}
+		else{
+			sortedIndexes[types.get(row)][stat] = null;
+		}
+		neighborIndexes[types.get(row)] = null;
+		if(stat == 4){ //shoots, which the bitmap index holds
+			bitmapIndex = null;
+		}
+		dropDerivedIndexes();
+		version++;
+	}
+	
+	//derived stats can change in every row (e.g., points share), so their indexes are rebuilt rather than updated
+	private void dropDerivedIndexes(){
+		for(int type = 0; type < sortedIndexes.length; type++){
+			Arrays.fill(sortedIndexes[type], MAX_STATS, ALL_STATS, null);
+		}
+	}
+	
+	/**
+	* method that switches the sorted indexes to skip lists updated in place by add and setStat,
+	* for rosters that receive a stream of game results
+	*/
+	public synchronized void setIncremental(){
+		incremental = true;
+		for(int type = 0; type < sortedIndexes.length; type++){
+			for(int stat = 0; stat < MAX_STATS; stat++){
+				if(sortedIndexes[type][stat] instanceof SortedStatIndex){
+					sortedIndexes[type][stat] = new LiveStatIndex((SortedStatIndex)sortedIndexes[type][stat]);
+				}
+			}
+		}
+	}
+	
+	private void ensureCapacity(int needed){
+		if(needed <= types.capacity()){
+			return;
+		}
+		int capacity = Math.max(needed, types.capacity() * 2);
+		if(offHeap){
+			nameOffsets = newInts(capacity).put(0, nameOffsets, 0, size);
+		}
+		else{
+			lastNames = Arrays.copyOf(lastNames, capacity);
+		}
+		positionCodes = newBytes(capacity).put(0, positionCodes, 0, size);
+		birthplaceCodes = newInts(capacity).put(0, birthplaceCodes, 0, size);
+		types = newBytes(capacity).put(0, types, 0, size);
+		statCounts = newBytes(capacity).put(0, statCounts, 0, size);
+		for(int i = 0; i < MAX_STATS; i++){
+			statColumns[i] = newInts(capacity).put(0, statColumns[i], 0, size);
+		}
+	}
+	
+	//appends a name to nameBytes as its length and UTF-8 bytes, doubling the buffer when it is full
+	private void addName(int row, String lastName){
+		byte[] encoded = lastName.getBytes(StandardCharsets.UTF_8);
+		if(nameEnd + 4 + encoded.length > nameBytes.capacity()){
+			long capacity = Math.max(nameEnd + 4L + encoded.length, nameBytes.capacity() * 2L);
+			nameBytes = newBytes((int)Math.min(capacity, Integer.MAX_VALUE - 8)).order(ByteOrder.LITTLE_ENDIAN).put(0, nameBytes, 0, nameEnd);
+		}
+		nameBytes.putInt(nameEnd, encoded.length);
+		nameBytes.put(nameEnd + 4, encoded);
+		nameOffsets.put(row, nameEnd);
+		nameEnd += 4 + encoded.length;
+	}
+	
+	/**
+	* method that allocates an int column in this store's memory (a direct buffer for an off-heap store), e.g. for derived stats
+	* @param int number of values
+	* @return IntBuffer zeroed column
+	*/
+	public IntBuffer newInts(int capacity){
+		return offHeap ? ByteBuffer.allocateDirect(capacity * 4).order(ByteOrder.nativeOrder()).asIntBuffer() : IntBuffer.allocate(capacity);
+	}
+	
+	private ByteBuffer newBytes(int capacity){
+		return offHeap ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+	}
+	
+	/**
+	* method that chooses where stores created with RosterStore(capacity), e.g. by RosterLoader, keep their columns
+	* @param boolean true for direct buffers, false for the heap
+	*/
+	public static void setOffHeapByDefault(boolean offHeap){
+		offHeapByDefault = offHeap;	
+	}
+	
+	public static boolean isOffHeapByDefault(){
+		return offHeapByDefault;	
+	}
+	
+	public boolean isOffHeap(){
+		return offHeap;	
+	}
+	
+	//getters
+	public int size(){
+		return size;	
+	}
+	
+	/**
+	* method that returns a number that changes whenever a row is added or a stat changes
+	* @return long version of the store's contents
+	*/
+	public long getVersion(){
+		return version;	
+	}
+	
+	/**
+	* method that returns the team and season of a store that is one partition of a league, shown next to its players
+	* @return String label (e.g., Capitals 2017-2018), or null for a single roster
+	*/
+	public String getLabel(){
+		return label;	
+	}
+	
+	public void setLabel(String label){
+		this.label = label;	
+	}
+	
+	/**
+	* method that returns a player's last name (decoded from nameBytes on each call in an off-heap store)
+	* @param int row number
+	* @return String last name
+	*/
+	public String getLastName(int row){
+		if(!offHeap){
+			return lastNames[row];
+		}
+		int offset = nameOffsets.get(row);
+		int length = nameBytes.getInt(offset);
+		if(length < 0){
+			return null;
+		}
+		byte[] encoded = new byte[length];
+		nameBytes.get(offset + 4, encoded);
+		return new String(encoded, StandardCharsets.UTF_8);
+	}
+	
+	public String getPosition(int row){
+		return PlayerPosition.fromCode(positionCodes.get(row)).getLabel();	
+	}
+	
+	public PlayerPosition getPlayerPosition(int row){
+		return PlayerPosition.fromCode(positionCodes.get(row));	
+	}
+	
+	public String getBirthplace(int row){
+		return birthplaces.decode(birthplaceCodes.get(row));	
+	}
+	
+	public int getType(int row){
+		return types.get(row);	
+	}
+	
+	public boolean isGoalie(int row){
+		return types.get(row) == GOALIE;	
+	}
+	
+	public int getStatCount(int row){
+		return statCounts.get(row);	
+	}
+	
+	public int getStat(int row, int stat){
+		return getStatColumn(stat).get(row);	
+	}
+	
+	/**
+	* method that tells whether a row has a stat (derived stats are in every row)
+	* @param int row number
+	* @param int stats array index value
+	* @return boolean true if the stat is one of the row's raw stats or a derived stat
+	*/
+	public boolean hasStat(int row, int stat){
+		return stat < statCounts.get(row) || stat >= MAX_STATS;	
+	}
+	
+	/**
+	* method that copies a row's stats into a new array shaped like HockeyPlayer.getStats()
+	* @param int row number
+	* @return int[] position-specific stats of the player
+	*/
+	public int[] getStats(int row){
+		int[] stats = new int[statCounts.get(row)];
+		for(int i = 0; i < stats.length; i++){
+			stats[i] = statColumns[i].get(row);
+		}
+		return stats;
+	}
+	
+	/**
+	* method that returns the backing buffer of one stat, read by row number with get(row) (only the first size() entries are rows);
+	* a derived stat (MAX_STATS and up) is computed by DerivedStats on first use and cached until the next add or setStat
+	* @param int stats array index value of the column
+	* @return IntBuffer stat column (shared; do not modify)
+	*/
+	public IntBuffer getStatColumn(int stat){
+		if(stat < MAX_STATS){
+			return statColumns[stat];	
+		}
+		synchronized(this){
+			if(derivedVersion != version){
+				Arrays.fill(derivedColumns, null);
+				derivedVersion = version;
+			}
+			if(derivedColumns[stat - MAX_STATS] == null){
+				derivedColumns[stat - MAX_STATS] = DerivedStats.compute(this, stat);
+			}
+			return derivedColumns[stat - MAX_STATS];
+		}
+	}
+	
+	public IntBuffer getRawColumn(int stat){
+		return statColumns[stat];	
+	}
+	
+	/**
+	* method that turns a stat menu position into a stats array index value: the raw stats come first,
+	* then the derived stats (e.g., skater menu position 4 is DerivedStats.SHARE_OR_SAVE)
+	* @param int SKATER or GOALIE
+	* @param int 0-based position in the type's stat menu
+	* @return int stats array index value
+	*/
+	public static int menuStat(int type, int menuIndex){
+		int raw = rawStatCount(type);
+		return menuIndex < raw ? menuIndex : MAX_STATS + menuIndex - raw;
+	}
+	
+	/**
+	* method that turns a stats array index value back into its stat menu position
+	* @param int SKATER or GOALIE
+	* @param int stats array index value
+	* @return int 0-based position in the type's stat menu
+	*/
+	public static int menuIndex(int type, int stat){
+		return stat < MAX_STATS ? stat : rawStatCount(type) + stat - MAX_STATS;
+	}
+	
+	/**
+	* method that returns how many stats the stat menu of a type offers (raw stats, then derived stats)
+	* @param int SKATER or GOALIE
+	* @return int number of menu stats
+	*/
+	public static int menuSize(int type){
+		return rawStatCount(type) + DERIVED_STATS;	
+	}
+	
+	//number of raw stats in the stat menus (skaters' shoots is filtered, not sorted)
+	private static int rawStatCount(int type){
+		return type == GOALIE ? 3 : 4;	
+	}
+	
+	public ByteBuffer getPositionCodes(){
+		return positionCodes;	
+	}
+	
+	public IntBuffer getBirthplaceCodes(){
+		return birthplaceCodes;	
+	}
+	
+	public ByteBuffer getTypes(){
+		return types;	
+	}
+	
+	public RosterDictionary getPositions(){
+		return positions;	
+	}
+	
+	public RosterDictionary getBirthplaces(){
+		return birthplaces;	
+	}
+	
+	public RosterRow getRow(int row){
+		return new RosterRow(this, row);	
+	}
+	
+	/**
+	* method that copies every row into a HockeyPlayer, in row order
+	* @return ArrayList<HockeyPlayer> one player per row
+	*/
+	public ArrayList<HockeyPlayer> toPlayers(){
+		ArrayList<HockeyPlayer> players = new ArrayList<HockeyPlayer>(size);
+		for(int row = 0; row < size; row++){
+			players.add(new HockeyPlayer(getLastName(row), getPlayerPosition(row), getBirthplace(row), getStats(row)));
+		}
+		return players;
+	}
+	
+	/**
+	* method that lists the rows of one position type in row order
+	* @param int RosterStore.SKATER or RosterStore.GOALIE
+	* @return int[] row numbers
+	*/
+	public int[] getRowsOfType(int type){
+		int count = 0;
+		for(int row = 0; row < size; row++){
+			if(types.get(row) == type){
+				count++;
+			}
+		}
+		int[] rows = new int[count];
+		count = 0;
+		for(int row = 0; row < size; row++){
+			if(types.get(row) == type){
+				rows[count++] = row;
+			}
+		}
+		return rows;
+	}
+	
+	/**
+	* method that returns the sorted index of one stat, building it on first use
+	* (kept until the next add or setStat, or kept current by them once setIncremental was called)
+	* @param int RosterStore.SKATER or RosterStore.GOALIE
+	* @param int stats array index value to sort by
+	* @return StatRangeIndex rows of that type in ascending stat order
+	*/
+	public synchronized StatRangeIndex getSortedIndex(int type, int stat){
+		if(sortedIndexes[type][stat] == null){
+			install(type, stat, new SortedStatIndex(this, type, stat));
+		}
+		return sortedIndexes[type][stat];
+	}
+	
+	/**
+	* method that installs a sorted index read back from a snapshot file, so it is not rebuilt on first use
+	* @param SortedStatIndex index of this store's rows
+	*/
+	public synchronized void restoreSortedIndex(SortedStatIndex sorted){
+		install(sorted.getType(), sorted.getStat(), sorted);
+	}
+	
+	/**
+	* method that installs a bitmap index read back from a snapshot file, so it is not rebuilt on first use
+	* @param RosterBitmapIndex index of this store's rows
+	*/
+	public synchronized void restoreBitmapIndex(RosterBitmapIndex bitmapIndex){
+		this.bitmapIndex = bitmapIndex;
+		indexed = true;
+	}
+	
+	private void install(int type, int stat, SortedStatIndex sorted){
+		sortedIndexes[type][stat] = incremental && stat < MAX_STATS ? new LiveStatIndex(sorted) : sorted;
+		indexed = true;
+	}
+	
+	/**
+	* method that returns the birthplace/shoots/position bitmaps, building them on first use and keeping them until the next add
+	* @return RosterBitmapIndex inverted indexes of the store
+	*/
+	public synchronized RosterBitmapIndex getBitmapIndex(){
+		if(bitmapIndex == null){
+			bitmapIndex = new RosterBitmapIndex(this);
+			indexed = true;
+		}
+		return bitmapIndex;
+	}
+	
+	/**
+	* method that returns the k-d tree of one position type's stat lines, building it on first use and keeping it until the next add,
+	* or the next setStat of a player of that type
+	* @param int RosterStore.SKATER or RosterStore.GOALIE
+	* @return StatNeighborIndex similarity index of the rows of that type
+	*/
+	public synchronized StatNeighborIndex getNeighborIndex(int type){
+		if(neighborIndexes[type] == null){
+			neighborIndexes[type] = new StatNeighborIndex(this, type);
+		}
+		return neighborIndexes[type];
+	}
+	
+	/**
+	* method that builds the sorted indexes of several stats at once, each sort running on its own fork-join task
+	* @param int RosterStore.SKATER or RosterStore.GOALIE
+	* @param int... stats array index values to sort by
+	*/
+	public synchronized void buildSortedIndexes(int type, int... stats){
+		SortedStatIndex[] built = new SortedStatIndex[stats.length];
+		ForkJoinPool.commonPool().invokeAll(sortTasks(type, stats, built));
+		for(int i = 0; i < stats.length; i++){
+			install(type, stats[i], built[i]);
+		}
+	}
+	
+	private ArrayList<Callable<SortedStatIndex>> sortTasks(int type, int[] stats, SortedStatIndex[] built){
+		ArrayList<Callable<SortedStatIndex>> tasks = new ArrayList<Callable<SortedStatIndex>>();
+		for(int i = 0; i < stats.length; i++){
+			int slot = i;
+			tasks.add(() -> built[slot] = new SortedStatIndex(this, type, stats[slot]));
+		}
+		return tasks;
+	}
+}
+
+///////////////////////////////////////////////////////////////////////////////////////////////////
+class DerivedStats{
+	//fields (derived stats follow the raw stats in RosterStore; each holds a skater metric in skater rows and a goalie metric in goalie rows)
+	public static final int SHARE_OR_SAVE = RosterStore.MAX_STATS;
+	public static final int RATIO_OR_GA_RATE = RosterStore.MAX_STATS + 1;
+	public static final int SCALE = 1000;
+	public static final String[] SKATER_NAMES = {"Points Share x1000", "Assist Ratio x1000"};
+	public static final String[] GOALIE_NAMES = {"Save Pct x1000", "GA per 1000 Shots"};
+	private static final int GOALS = 0, ASSISTS = 1, POINTS = 2;
+	private static final int SHOTS_AGAINST = 0, GOALS_AGAINST = 1, SAVES = 2;
+	
+	//no instances; the metrics are a set of static column loops
+	private DerivedStats(){
+	}
+	
+	/**
+	* method that computes one derived stat for every row in one pass over primitive columns (in thousandths, so it sorts like a raw stat):
+	* points share is a skater's share of the skater points of the store and save pct is saves per shot against;
+	* assist ratio is assists per point and GA rate is goals against per shot against
+	* @param RosterStore store whose raw stat columns are read
+	* @param int SHARE_OR_SAVE or RATIO_OR_GA_RATE
+	* @return IntBuffer one value per row, in the store's memory (see RosterStore.newInts)
+	*/
+	public static IntBuffer compute(RosterStore store, int stat){
+		int size = store.size();
+		ByteBuffer types = store.getTypes();
+		IntBuffer skaterNumerator = store.getRawColumn(stat == SHARE_OR_SAVE ? POINTS : ASSISTS);
+		IntBuffer goalieNumerator = store.getRawColumn(stat == SHARE_OR_SAVE ? SAVES : GOALS_AGAINST);
+		IntBuffer shots = store.getRawColumn(SHOTS_AGAINST);
+		IntBuffer column = store.newInts(Math.max(size, 1));
+		if(stat == SHARE_OR_SAVE){
+			long teamPoints = 0;
+			for(int row = 0; row < size; row++){
+				teamPoints += types.get(row) == RosterStore.SKATER ? skaterNumerator.get(row) : 0;
+			}
+			long skaterDenominator = Math.max(teamPoints, 1);
+			for(int row = 0; row < size; row++){
+				long skater = skaterNumerator.get(row) * (long)SCALE / skaterDenominator;
+				long goalie = goalieNumerator.get(row) * (long)SCALE / Math.max(shots.get(row), 1);
+				column.put(row, (int)(types.get(row) == RosterStore.GOALIE ? goalie : skater));
+			}
+		}
+		else{
+			IntBuffer points = store.getRawColumn(POINTS);
+			for(int row = 0; row < size; row++){
+				long skater = skaterNumerator.get(row) * (long)SCALE / Math.max(points.get(row), 1);
+				long goalie = goalieNumerator.get(row) * (long)SCALE / Math.max(shots.get(row), 1);
+				column.put(row, (int)(types.get(row) == RosterStore.GOALIE ? goalie : skater));
+			}
+		}
+		return column;
+	}
+}
+
+///////////////////////////////////////////////////////////////////////////////////////////////////
+class RosterSort{
+	//fields
+	public static final int PARALLEL_THRESHOLD = 1 << 13;
+	
+	//no instances; the sort is a set of static helpers
+	private RosterSort(){
+	}
+	
+	/**
+	* method that sorts rows by one stat column without comparators: each row becomes a long with the stat in the high 32 bits
+	* and the row in the low 32 bits, so one primitive sort orders by stat, then by row (Arrays.parallelSort on large inputs)
+	* @param IntBuffer stat column from RosterStore.getStatColumn
+	* @param int[] row numbers to sort
+	* @return long[] packed keys in ascending order (read them with row and key)
+	*/
+	public static long[] sortByStat(IntBuffer column, int[] rows){
+		long[] packed = new long[rows.length];
+		for(int i = 0; i < rows.length; i++){
+			packed[i] = pack(column.get(rows[i]), rows[i]);
+		}
+		if(packed.length >= PARALLEL_THRESHOLD){
+			Arrays.parallelSort(packed);
+		}
+		else{
+			Arrays.sort(packed);
+		}
+		return packed;
+	}
+	
+	/**
+	* method that sorts rows by one stat column
+	* @param IntBuffer stat column from RosterStore.getStatColumn
+	* @param int[] row numbers to sort
+	* @return int[] the rows in ascending stat order, ties in row order
+	*/
+	public static int[] sortRows(IntBuffer column, int[] rows){
+		long[] packed = sortByStat(column, rows);
+		int[] sorted = new int[packed.length];
+		for(int i = 0; i < packed.length; i++){
+			sorted[i] = row(packed[i]);
+		}
+		return sorted;
+	}
+	
+	public static long pack(int key, int row){
+		return ((long)key << 32) | row;	
+	}
+	
+	public static int row(long packed){
+		return (int)packed;	
+	}
+	
+	public static int key(long packed){
+		return (int)(packed >> 32);	
+	}
+}
+
+///////////////////////////////////////////////////////////////////////////////////////////////////
+class StatLeaders{
+	//fields
+	private static final int CHUNK_SIZE = RosterSort.PARALLEL_THRESHOLD;
+	
+	//no instances; the leaderboard is a set of static helpers
+	private StatLeaders(){
+	}
+	
+	/**
+	* method that finds the k rows with the highest (or lowest) stat with a bounded heap, in O(n log k) without sorting every row
+	* @param IntBuffer stat column from RosterStore.getStatColumn
+	* @param int[] row numbers to search
+	* @param int number of leaders to return
+	* @param boolean true for the highest values, false for the lowest
+	* @return int[] at most k rows, best first, ties in row order
+	*/
+	public static int[] leaders(IntBuffer column, int[] rows, int k, boolean highest){
+		RankHeap heap = new RankHeap(Math.max(Math.min(k, rows.length), 0));
+		heap.offerAll(column, rows, 0, rows.length, highest);
+		return heap.drain(highest);
+	}
+	
+	/**
+	* method that finds the k rows with the highest (or lowest) stat by filling one bounded heap per chunk of rows in parallel,
+	* then merging the chunk heaps into one (rosters under RosterSort.PARALLEL_THRESHOLD rows run serially)
+	* @param IntBuffer stat column from RosterStore.getStatColumn
+	* @param int[] row numbers to search
+	* @param int number of leaders to return
+	* @param boolean true for the highest values, false for the lowest
+	* @return int[] at most k rows, best first, ties in row order
+	*/
+	public static int[] leadersParallel(IntBuffer column, int[] rows, int k, boolean highest){
+		int capacity = Math.max(Math.min(k, rows.length), 0);
+		if(rows.length < 2 * CHUNK_SIZE || capacity == 0){
+			return leaders(column, rows, k, highest);
+		}
+		ArrayList<Callable<RankHeap>> tasks = new ArrayList<Callable<RankHeap>>();
+		for(int start = 0; start < rows.length; start += CHUNK_SIZE){
+			int from = start;
+			int to = Math.min(start + CHUNK_SIZE, rows.length);
+			tasks.add(() -> {
+				RankHeap chunk = new RankHeap(Math.min(capacity, to - from));
+				chunk.offerAll(column, rows, from, to, highest);
+				return chunk;
+			});
+		}
+		RankHeap merged = new RankHeap(capacity);
+		for(Future<RankHeap> chunk : ForkJoinPool.commonPool().invokeAll(tasks)){
+			try{
+				merged.offerAll(chunk.get());
+			}
+			catch(InterruptedException | ExecutionException e){
+				throw new IllegalStateException("Exception in leadersParallel method: " + e, e);
+			}
+		}
+		return merged.drain(highest);
+	}
+	
+	//packs a stat and row into a long that is larger for a better leader (higher or lower stat first, then lower row)
+	private static long rank(int value, int row, boolean highest){
+		return highest ? RosterSort.pack(value, Integer.MAX_VALUE - row) : ~RosterSort.pack(value, row);
+	}
+	
+	private static int rowOf(long rank, boolean highest){
+		return highest ? Integer.MAX_VALUE - RosterSort.row(rank) : RosterSort.row(~rank);
+	}
+	
+	//min-heap of primitive ranks that keeps only the largest capacity ranks offered to it
+	private static final class RankHeap{
+		private final long[] ranks;
+		private int size;
+		
+		private RankHeap(int capacity){
+			ranks = new long[capacity];
+		}
+		
+		private void offerAll(IntBuffer column, int[] rows, int from, int to, boolean highest){
+			for(int i = from; i < to; i++){
+				offer(rank(column.get(rows[i]), rows[i], highest));
+			}
+		}
+		
+		private void offerAll(RankHeap other){
+			for(int i = 0; i < other.size; i++){
+				offer(other.ranks[i]);
+			}
+		}
+		
+		private void offer(long rank){
+			if(size < ranks.length){
+				int i = size++;
+				while(i > 0 && ranks[(i - 1) / 2] > rank){
+					ranks[i] = ranks[(i - 1) / 2];
+					i = (i - 1) / 2;
+				}
+				ranks[i] = rank;
+			}
+			else if(size > 0 && rank > ranks[0]){
+				siftDown(rank);
+			}
+		}
+		
+		//replaces the smallest rank, moving the new one down to its place
+		private void siftDown(long rank){
+			int i = 0;
+			int child;
+			while((child = 2 * i + 1) < size){
+				if(child + 1 < size && ranks[child + 1] < ranks[child]){
+					child++;
+				}
+				if(ranks[child] >= rank){
+					break;
+				}
+				ranks[i] = ranks[child];
+				i = child;
+			}
+			ranks[i] = rank;
+		}
+		
+		//empties the heap smallest rank first, filling the rows from the back so the best leader comes first
+		private int[] drain(boolean highest){
+			int[] rows = new int[size];
+			while(size > 0){
+				rows[size - 1] = rowOf(ranks[0], highest);
+				long last = ranks[--size];
+				if(size > 0){
+					siftDown(last);
+				}
+			}
+			return rows;
+		}
+	}
+}
+
+///////////////////////////////////////////////////////////////////////////////////////////////////
+/**
+* rows of one position type ordered by one stat, answering min <= stat <= max range walks
+*/
+interface StatRangeIndex{
+	int getType();
+	
+	int getStat();
+	
+	int size();
+	
+	int getMin();
+	
+	int getMax();
+	
+	/**
+	* method that walks the rows whose stat lies within bounds
+	* @param int smallest stat value to include
+	* @param int largest stat value to include
+	* @return PrimitiveIterator.OfInt row numbers in ascending stat order, ties in row order
+	*/
+	PrimitiveIterator.OfInt rows(int min, int max);
+}
+
+///////////////////////////////////////////////////////////////////////////////////////////////////
+class LiveStatIndex implements StatRangeIndex{
+	//fields
+	private final int type;
+	private final int stat;
+	private final ConcurrentSkipListSet<Long> keys = new ConcurrentSkipListSet<Long>();
+	private volatile int size;
+	
+	/**
+	* constructor that copies a sorted index into a skip list that stays ordered as stats change (O(log n) per change)
+	* @param SortedStatIndex index to copy
+	*/
+	public LiveStatIndex(SortedStatIndex sorted){
+		type = sorted.getType();
+		stat = sorted.getStat();
+		for(int i = 0; i < sorted.size(); i++){
+			keys.add(RosterSort.pack(sorted.getKey(i), sorted.getRow(i)));
+		}
+		size = sorted.size();
+	}
+	
+	/**
+	* method that adds a new row
+	* @param int row number
+	* @param int stat value of the row
+	*/
+	public void insert(int row, int value){
+		if(keys.add(RosterSort.pack(value, row))){
+			size++;
+		}
+	}
+	
+	/**
+	* method that moves a row to its new place after its stat changed (a reader running at the same time may see it at both values)
+	* @param int row number
+	* @param int previous stat value
+	* @param int new stat value
+	*/
+	public void update(int row, int oldValue, int newValue){
+		if(oldValue != newValue){
+			keys.add(RosterSort.pack(newValue, row));
+			keys.remove(RosterSort.pack(oldValue, row));
+		}
+	}
+	
+	@Override
+	public PrimitiveIterator.OfInt rows(int min, int max){
+		if(min > max){
+			return IntStream.empty().iterator();
+		}
+		Iterator<Long> range = keys.subSet(RosterSort.pack(min, 0), true, RosterSort.pack(max, Integer.MAX_VALUE), true).iterator();
+		return new PrimitiveIterator.OfInt(){
+			@Override
+			public boolean hasNext(){
+				return range.hasNext();
+			}
+			
+			@Override
+			public int nextInt(){
+				return RosterSort.row(range.next());
+			}
+		};
+	}
+	
+	//getters
+	@Override
+	public int getType(){
+		return type;	
+	}
+	
+	@Override
+	public int getStat(){
+		return stat;	
+	}
+	
+	@Override
+	public int size(){
+		return size;	
+	}
+	
+	@Override
+	public int getMin(){
+		return RosterSort.key(keys.first());	
+	}
+	
+	@Override
+	public int getMax(){
+		return RosterSort.key(keys.last());	
+	}
+}
+
+///////////////////////////////////////////////////////////////////////////////////////////////////
+class SortedStatIndex implements StatRangeIndex{
+	//fields
+	private final int type;
+	private final int stat;
+	private final int size;
+	private final IntBuffer rows;
+	private final IntBuffer keys;
+	
+	/**
+	* constructor that sorts one stat column of one position type (ties keep roster order), keeping the result in the store's memory
+	* @param RosterStore store that holds the players
+	* @param int RosterStore.SKATER or RosterStore.GOALIE
+	* @param int stats array index value to sort by
+	*/
+	public SortedStatIndex(RosterStore store, int type, int stat){
+		this.type = type;
+		this.stat = stat;
+		long[] packed = RosterSort.sortByStat(store.getStatColumn(stat), store.getRowsOfType(type));
+		size = packed.length;
+		rows = store.newInts(Math.max(size, 1));
+		keys = store.newInts(Math.max(size, 1));
+		for(int i = 0; i < size; i++){
+			rows.put(i, RosterSort.row(packed[i]));
+			keys.put(i, RosterSort.key(packed[i]));
+		}
+	}
+	
+	/**
+	* constructor that wraps rows already sorted by a stat (e.g., read back from a snapshot file)
+	* @param int RosterStore.SKATER or RosterStore.GOALIE
+	* @param int stats array index value the rows are sorted by
+	* @param IntBuffer rows in ascending stat order (every value up to its capacity)
+	* @param IntBuffer stat of each of those rows
+	*/
+	public SortedStatIndex(int type, int stat, IntBuffer rows, IntBuffer keys){
+		if(rows.capacity() != keys.capacity()){
+			throw new IllegalArgumentException("Sorted index has " + rows.capacity() + " rows but " + keys.capacity() + " keys");
+		}
+		this.type = type;
+		this.stat = stat;
+		this.size = rows.capacity();
+		this.rows = rows;
+		this.keys = keys;
+	}
+	
+	/**
+	* method that returns the first sorted position whose stat is at least min
+	* @param int smallest stat value to include
+	* @return int sorted position, or size() if every stat is below min
+	*/
+	public int lowerBound(int min){
+		int lo = 0;
+		int hi = size;
+		while(lo < hi){
+			int mid = (lo + hi) >>> 1;
+			if(keys.get(mid) < min){
+				lo = mid + 1;
+			}
+			else{
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+	
+	/**
+	* method that returns the first sorted position whose stat is greater than max
+	* @param int largest stat value to include
+	* @return int sorted position, or size() if no stat is above max
+	*/
+	public int upperBound(int max){
+		int lo = 0;
+		int hi = size;
+		while(lo < hi){
+			int mid = (lo + hi) >>> 1;
+			if(keys.get(mid) <= max){
+				lo = mid + 1;
+			}
+			else{
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+	
+	@Override
+	public PrimitiveIterator.OfInt rows(int min, int max){
+		int start = lowerBound(min);
+		int end = upperBound(max);
+		return new PrimitiveIterator.OfInt(){
+			private int position = start;
+			
+			@Override
+			public boolean hasNext(){
+				return position < end;
+			}
+			
+			@Override
+			public int nextInt(){
+				if(position >= end){
+					throw new NoSuchElementException();
+				}
+				return rows.get(position++);
+			}
+		};
+	}
+	
+	//getters
+	@Override
+	public int getType(){
+		return type;	
+	}
+	
+	@Override
+	public int getStat(){
+		return stat;	
+	}
+	
+	@Override
+	public int size(){
+		return size;	
+	}
+	
+	public int getRow(int position){
+		return rows.get(position);	
+	}
+	
+	public int getKey(int position){
+		return keys.get(position);	
+	}
+	
+	//shared buffers (do not modify; the first size() values are the index), for RosterSnapshotFile
+	public IntBuffer getRows(){
+		return rows;	
+	}
+	
+	public IntBuffer getKeys(){
+		return keys;	
+	}
+	
+	@Override
+	public int getMin(){
+		return keys.get(0);	
+	}
+	
+	@Override
+	public int getMax(){
+		return keys.get(size - 1);	
+	}
+}
+
+///////////////////////////////////////////////////////////////////////////////////////////////////
+/**
+* row sets per birthplace, position and shoots value: positions and shoots have a few values, so each keeps a dense bitmap
+* of the whole roster, while birthplaces (one per 50 players or so in a large league) keep sorted row lists, so memory
+* grows with the rows rather than with birthplaces x rows
+*/
+class RosterBitmapIndex{
+	//fields
+	public static final int SHOOTS_R = 0;
+	public static final int SHOOTS_L = 1;
+	private final RosterStore store;
+	private final IntBuffer birthplaceStarts; //birthplace code's first entry in birthplaceRows, then the entry count
+	private final IntBuffer birthplaceRows; //rows grouped by birthplace code, ascending within each code
+	private final BitSet[] positionBits;
+	private final BitSet[] shootsBits;
+	private final BitSet allBits = new BitSet();
+	
+	/**
+	* constructor that builds one row list per birthplace and one bitmap of rows per position and per shoots value
+	* @param RosterStore store that holds the players
+	*/
+	public RosterBitmapIndex(RosterStore store){
+		this.store = store;
+		positionBits = newBitmaps(PlayerPosition.count());
+		shootsBits = newBitmaps(2);
+		//a counting sort of the rows by birthplace code, which keeps each code's rows ascending
+		int size = store.size();
+		int[] starts = new int[store.getBirthplaces().size() + 1];
+		IntBuffer birthplaceCodes = store.getBirthplaceCodes();
+		for(int row = 0; row < size; row++){
+			starts[birthplaceCodes.get(row) + 1]++;
+		}
+		for(int code = 1; code < starts.length; code++){
+			starts[code] += starts[code - 1];
+		}
+		int[] next = Arrays.copyOf(starts, starts.length - 1);
+		int[] rows = new int[size];
+		for(int row = 0; row < size; row++){
+			rows[next[birthplaceCodes.get(row)]++] = row;
+		}
+		birthplaceStarts = IntBuffer.wrap(starts);
+		birthplaceRows = IntBuffer.wrap(rows);
+		ByteBuffer positionCodes = store.getPositionCodes();
+		IntBuffer shoots = store.getStatColumn(4);
+		ByteBuffer types = store.getTypes();
+		for(int row = 0; row < store.size(); row++){
+			positionBits[positionCodes.get(row)].set(row);
+			int shot = shoots.get(row);
+			if(types.get(row) == RosterStore.SKATER && (shot == SHOOTS_R || shot == SHOOTS_L)){
+				shootsBits[shot].set(row);
+			}
+		}
+		allBits.set(0, size);
+	}
+	
+	/**
+	* constructor that wraps row lists and bitmaps already built for a store (e.g., read back or mapped from a snapshot file)
+	* @param RosterStore store that holds the players
+	* @param IntBuffer first entry in birthplaceRows of each birthplace code, then the entry count
+	* @param IntBuffer rows grouped by birthplace code, ascending within each code
+	* @param BitSet[] rows per position code
+	* @param BitSet[] skater rows per shoots value (SHOOTS_R, SHOOTS_L)
+	*/
+	public RosterBitmapIndex(RosterStore store, IntBuffer birthplaceStarts, IntBuffer birthplaceRows, BitSet[] positionBits, BitSet[] shootsBits){
+		if(positionBits.length != PlayerPosition.count() || shootsBits.length != 2){
+			throw new IllegalArgumentException("Bitmap index has " + positionBits.length + " positions and " + shootsBits.length + " shoots values");
+		}
+		this.store = store;
+		this.birthplaceStarts = birthplaceStarts;
+		this.birthplaceRows = birthplaceRows;
+		this.positionBits = positionBits;
+		this.shootsBits = shootsBits;
+		allBits.set(0, store.size());
+	}
+	
+	private static BitSet[] newBitmaps(int count){
+		BitSet[] bitmaps = new BitSet[count];
+		for(int i = 0; i < count; i++){
+			bitmaps[i] = new BitSet();
+		}
+		return bitmaps;
+	}
+	
+	/**
+	* method that returns the players born in a country
+	* @param String birthplace (country)
+	* @return BitSet rows of the matching players (a copy the caller may modify)
+	*/
+	public BitSet birthplace(String birthplace){
+		return birthplace(store.getBirthplaces().codeOf(birthplace));
+	}
+	
+	/**
+	* method that returns the players born in a country
+	* @param int birthplace code from RosterStore.getBirthplaces()
+	* @return BitSet rows of the matching players (a copy the caller may modify)
+	*/
+	public BitSet birthplace(int code){
+		BitSet matches = new BitSet();
+		if(code >= 0 && code < birthplaceStarts.limit() - 1){
+			for(int i = birthplaceStarts.get(code); i < birthplaceStarts.get(code + 1); i++){
+				matches.set(birthplaceRows.get(i));
+			}
+		}
+		return matches;
+	}
+	
+	/**
+	* method that returns the skaters who shoot a given way
+	* @param int SHOOTS_R or SHOOTS_L (the value of stats[4])
+	* @return BitSet rows of the matching skaters (a copy the caller may modify)
+	*/
+	public BitSet shoots(int shoots){
+		return (BitSet)shootsBits[shoots].clone();
+	}
+	
+	/**
+	* method that returns the players who play a position, group, or sub-position, so "Forward" also matches "Forward, LW"
+	* @param String position, group, or sub-position (see PlayerPosition.matching)
+	* @return BitSet rows of the matching players (a copy the caller may modify)
+	*/
+	public BitSet position(String position){
+		BitSet matches = new BitSet();
+		int mask = PlayerPosition.matching(position);
+		for(int code = 0; code < positionBits.length; code++){
+			if((mask & 1 << code) != 0){
+				matches.or(positionBits[code]);
+			}
+		}
+		return matches;
+	}
+	
+	/**
+	* method that returns every row of the roster
+	* @return BitSet rows of all players (a copy the caller may modify)
+	*/
+	public BitSet all(){
+		return (BitSet)allBits.clone();
+	}
+	
+	//shared row lists and bitmaps (do not modify), for RosterSnapshotFile
+	public IntBuffer getBirthplaceStarts(){
+		return birthplaceStarts;	
+	}
+	
+	public IntBuffer getBirthplaceRows(){
+		return birthplaceRows;	
+	}
+	
+	public BitSet[] getPositionBits(){
+		return positionBits;	
+	}
+	
+	public BitSet[] getShootsBits(){
+		return shootsBits;	
+	}
+	
+	/**
+	* method that intersects filters (players matching every filter)
+	* @param BitSet... filters to combine
+	* @return BitSet new bitmap of the intersection
+	*/
+	public BitSet and(BitSet... filters){
+		BitSet result = all();
+		for(BitSet filter : filters){
+			result.and(filter);
+		}
+		return result;
+	}
+	
+	/**
+	* method that unites filters (players matching at least one filter)
+	* @param BitSet... filters to combine
+	* @return BitSet new bitmap of the union
+	*/
+	public BitSet or(BitSet... filters){
+		BitSet result = new BitSet();
+		for(BitSet filter : filters){
+			result.or(filter);
+		}
+		return result;
+	}
+}
+
+///////////////////////////////////////////////////////////////////////////////////////////////////
+/**
+* k-d tree over the stat lines of one position type in one store (skaters: goals, assists, points, +/-; goalies: shots against,
+* goals against, saves) that finds the players most similar to a given one; distances are measured on stats scaled by their
+* standard deviation, and since scaling a stat does not move the tree's splits, one tree serves the scaling of any set of stores
+*/
+class StatNeighborIndex{
+	//fields
+	private static final int LEAF_SIZE = 8;
+	private static final int CHUNK_SIZE = RosterSort.PARALLEL_THRESHOLD;
+	private final int dimensions;
+	private final int[] rows; //in tree order: the middle entry of a range splits it, ranges of LEAF_SIZE entries or fewer are leaves
+	private final int[] values; //the stats of each entry of rows, dimensions at a time
+	private final long[] sums;
+	private final long[] squareSums;
+	
+	/**
+	* constructor that copies the stat lines of one position type and arranges them as a balanced tree, splitting on each stat in turn
+	* @param RosterStore store that holds the players
+	* @param int RosterStore.SKATER or RosterStore.GOALIE
+	*/
+	public StatNeighborIndex(RosterStore store, int type){
+		dimensions = dimensions(type);
+		rows = store.getRowsOfType(type);
+		values = new int[rows.length * dimensions];
+		sums = new long[dimensions];
+		squareSums = new long[dimensions];
+		for(int stat = 0; stat < dimensions; stat++){
+			IntBuffer column = store.getStatColumn(stat);
+			for(int i = 0; i < rows.length; i++){
+				int value = column.get(rows[i]);
+				values[i * dimensions + stat] = value;
+				sums[stat] += value;
+				squareSums[stat] += (long)value * value;
+			}
+		}
+		build(0, rows.length, 0);
+	}
+	
+	/**
+	* method that returns how many stats a stat line of a position type has (the raw stats of its Sort menu)
+	* @param int RosterStore.SKATER or RosterStore.GOALIE
+	* @return int 4 for skaters, 3 for goalies
+	*/
+	public static int dimensions(int type){
+		return RosterStore.menuSize(type) - RosterStore.DERIVED_STATS;	
+	}
+	
+	public int size(){
+		return rows.length;	
+	}
+	
+	/**
+	* method that finds the k players whose stat lines are closest to a reference player's, searching the tree of each store
+	* on its own fork-join task and merging the results; the stats are scaled by their standard deviation over all the stores
+	* @param List<RosterStore> stores to search (e.g., every partition of a league)
+	* @param long reference player packed as store index and row (RosterSort.pack); they are not returned themselves
+	* @param int number of players to return
+	* @param boolean true to scan every stat line in parallel instead of searching the trees (to check the trees)
+	* @return long[] at most k players of the reference player's type packed as store index and row, nearest first, ties in store then row order
+	*/
+	public static long[] nearest(List<RosterStore> stores, long player, int k, boolean bruteForce){
+		RosterStore playerStore = stores.get(RosterSort.key(player));
+		int playerRow = RosterSort.row(player);
+		int type = playerStore.getType(playerRow);
+		List<StatNeighborIndex> indexes = PartitionedRoster.fanOut(stores, store -> store.getNeighborIndex(type));
+		int dimensions = dimensions(type);
+		double[] point = new double[dimensions];
+		for(int stat = 0; stat < dimensions; stat++){
+			point[stat] = playerStore.getStatColumn(stat).get(playerRow);
+		}
+		double[] weights = weights(indexes, dimensions);
+		long count = 0;
+		for(StatNeighborIndex index : indexes){
+			count += index.size();
+		}
+		int capacity = (int)Math.max(Math.min(k, count - 1), 0);
+		if(capacity == 0){
+			return new long[0];
+		}
+		ArrayList<Callable<Neighbors>> tasks = new ArrayList<Callable<Neighbors>>();
+		for(int i = 0; i < indexes.size(); i++){
+			StatNeighborIndex index = indexes.get(i);
+			int store = i;
+			if(!bruteForce){
+				tasks.add(() -> {
+					Neighbors neighbors = new Neighbors(capacity, player);
+					index.search(store, point, weights, neighbors, 0, index.size(), 0);
+					return neighbors;
+				});
+				continue;
+			}
+			for(int start = 0; start < index.size(); start += CHUNK_SIZE){
+				int from = start;
+				int to = Math.min(start + CHUNK_SIZE, index.size());
+				tasks.add(() -> {
+					Neighbors neighbors = new Neighbors(capacity, player);
+					index.scan(store, point, weights, neighbors, from, to);
+					return neighbors;
+				});
+			}
+		}
+		Neighbors merged = new Neighbors(capacity, player);
+		if(tasks.size() == 1 || count < 2 * CHUNK_SIZE){
+			for(Callable<Neighbors> task : tasks){
+				try{
+					merged.offerAll(task.call());
+				}
+				catch(Exception e){
+					throw new IllegalStateException("Exception in nearest method: " + e, e);
+				}
+			}
+			return merged.drain();
+		}
+		for(Future<Neighbors> neighbors : ForkJoinPool.commonPool().invokeAll(tasks)){
+			try{
+				merged.offerAll(neighbors.get());
+			}
+			catch(InterruptedException | ExecutionException e){
+				throw new IllegalStateException("Exception in nearest method: " + e, e);
+			}
+		}
+		return merged.drain();
+	}
+	
+	//1 / variance of each stat over every tree, so a distance counts each stat in standard deviations (1 for a stat that never varies)
+	private static double[] weights(List<StatNeighborIndex> indexes, int dimensions){
+		double[] weights = new double[dimensions];
+		long count = 0;
+		for(StatNeighborIndex index : indexes){
+			count += index.size();
+		}
+		for(int stat = 0; stat < dimensions; stat++){
+			double sum = 0;
+			double squareSum = 0;
+			for(StatNeighborIndex index : indexes){
+				sum += index.sums[stat];
+				squareSum += index.squareSums[stat];
+			}
+			double mean = count == 0 ? 0 : sum / count;
+			double variance = count == 0 ? 0 : squareSum / count - mean * mean;
+			weights[stat] = variance > 1e-9 ? 1 / variance : 1;
+		}
+		return weights;
+	}
+	
+	//arranges entries [from, to) so the median of one stat sits in the middle with no larger values before it and no smaller ones
+	//after it, then does the same for each half on the next stat
+	private void build(int from, int to, int depth){
+		if(to - from <= LEAF_SIZE){
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		select(from, to - 1, middle, depth % dimensions);
+		build(from, middle, depth + 1);
+		build(middle + 1, to, depth + 1);
+	}
+	
+	//quickselect that moves the entry with the rank-th smallest value of one stat to position rank
+	private void select(int left, int right, int rank, int stat){
+		while(left < right){
+			int pivot = values[((left + right) >>> 1) * dimensions + stat];
+			int i = left;
+			int j = right;
+			while(i <= j){
+				while(values[i * dimensions + stat] < pivot){
+					i++;
+				}
+				while(values[j * dimensions + stat] > pivot){
+					j--;
+				}
+				if(i <= j){
+					swap(i++, j--);
+				}
+			}
+			if(rank <= j){
+				right = j;
+			}
+			else if(rank >= i){
+				left = i;
+			}
+			else{
+				return; //entries between j and i all equal the pivot
+			}
+		}
+	}
+	
+	private void swap(int i, int j){
+		int row = rows[i];
+		rows[i] = rows[j];
+		rows[j] = row;
+		for(int stat = 0; stat < dimensions; stat++){
+			int value = values[i * dimensions + stat];
+			values[i * dimensions + stat] = values[j * dimensions + stat];
+			values[j * dimensions + stat] = value;
+		}
+	}
+	
+	//offers the entries of [from, to) nearest first, skipping a half whose split is already farther away than the worst neighbor kept
+	private void search(int store, double[] point, double[] weights, Neighbors neighbors, int from, int to, int depth){
+		if(to - from <= LEAF_SIZE){
+			scan(store, point, weights, neighbors, from, to);
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		int stat = depth % dimensions;
+		neighbors.offer(distance(middle, point, weights), RosterSort.pack(store, rows[middle]));
+		double gap = point[stat] - values[middle * dimensions + stat];
+		boolean lowerFirst = gap < 0;
+		search(store, point, weights, neighbors, lowerFirst ? from : middle + 1, lowerFirst ? middle : to, depth + 1);
+		if(gap * gap * weights[stat] <= neighbors.bound()){ //<= so an equally distant row earlier in the roster still wins a tie
+			search(store, point, weights, neighbors, lowerFirst ? middle + 1 : from, lowerFirst ? to : middle, depth + 1);
+		}
+	}
+	
+	private void scan(int store, double[] point, double[] weights, Neighbors neighbors, int from, int to){
+		for(int i = from; i < to; i++){
+			neighbors.offer(distance(i, point, weights), RosterSort.pack(store, rows[i]));
+		}
+	}
+	
+	//squared distance in standard deviations from the point to one entry
+	private double distance(int entry, double[] point, double[] weights){
+		double distance = 0;
+		for(int stat = 0; stat < dimensions; stat++){
+			double gap = point[stat] - values[entry * dimensions + stat];
+			distance += gap * gap * weights[stat];
+		}
+		return distance;
+	}
+	
+	//max-heap of the nearest players offered so far, by distance, then packed store index and row; the root is the worst one kept
+	private static final class Neighbors{
+		private final double[] distances;
+		private final long[] players;
+		private final long excluded;
+		private int size;
+		
+		private Neighbors(int capacity, long excluded){
+			distances = new double[capacity];
+			players = new long[capacity];
+			this.excluded = excluded;
+		}
+		
+		//distance a new player has to be within to be kept
+		private double bound(){
+			return size < distances.length ? Double.POSITIVE_INFINITY : distances[0];
+		}
+		
+		private void offer(double distance, long player){
+			if(player == excluded){
+				return;
+			}
+			if(size < distances.length){
+				int i = size++;
+				while(i > 0 && farther(distance, player, (i - 1) / 2)){
+					distances[i] = distances[(i - 1) / 2];
+					players[i] = players[(i - 1) / 2];
+					i = (i - 1) / 2;
+				}
+				distances[i] = distance;
+				players[i] = player;
+			}
+			else if(farther(distances[0], players[0], distance, player)){
+				siftDown(distance, player);
+			}
+		}
+		
+		private void offerAll(Neighbors other){
+			for(int i = 0; i < other.size; i++){
+				offer(other.distances[i], other.players[i]);
+			}
+		}
+		
+		private boolean farther(double distance, long player, int i){
+			return farther(distance, player, distances[i], players[i]);
+		}
+		
+		private static boolean farther(double distance, long player, double otherDistance, long otherPlayer){
+			return distance > otherDistance || (distance == otherDistance && player > otherPlayer);
+		}
+		
+		//replaces the worst player kept, moving the new one down to its place
+		private void siftDown(double distance, long player){
+			int i = 0;
+			int child;
+			while((child = 2 * i + 1) < size){
+				if(child + 1 < size && farther(distances[child + 1], players[child + 1], child)){
+					child++;
+				}
+				if(!farther(distances[child], players[child], distance, player)){
+					break;
+				}
+				distances[i] = distances[child];
+				players[i] = players[child];
+				i = child;
+			}
+			distances[i] = distance;
+			players[i] = player;
+		}
+		
+		//empties the heap worst player first, filling the result from the back so the nearest comes first
+		private long[] drain(){
+			long[] nearest = new long[size];
+			while(size > 0){
+				nearest[size - 1] = players[0];
+				size--;
+				if(size > 0){
+					siftDown(distances[size], players[size]);
+				}
+			}
+			return nearest;
+		}
+	}
+}
+
+///////////////////////////////////////////////////////////////////////////////////////////////////
+/**
+* filter expression over the roster columns, parsed once and compiled per store into one fused row predicate, e.g.
+*	birthplace=Canada AND position~RW AND points BETWEEN 20 AND 50 AND shoots=L
+* fields: name, birthplace (= != ~), position (= != ~, a label, group, or sub-position), shoots (R|L), type (goalie|skater),
+* and the skater stats goals, assists, points, plusminus, points_share, assist_ratio or the goalie stats shots_against,
+* goals_against, saves, save_pct, ga_per_1000 (= != < <= > >= BETWEEN; a stat only matches players of its type);
+* terms combine with AND, OR, NOT and parentheses; values with spaces may be quoted or written bare (birthplace=Czech Republic)
+* (inside single quotes, '' stands for one ', e.g., name='O''Brien'; a bare value may hold a ' too, e.g., name=O'Brien)
+*/
+class RosterFilter{
+	//fields
+	static final String[] STAT_FIELDS = {"goals", "assists", "points", "plusminus", "points_share", "assist_ratio", "shots_against", "goals_against", "saves", "save_pct", "ga_per_1000"};
+	static final int[] STAT_TYPES = {RosterStore.SKATER, RosterStore.SKATER, RosterStore.SKATER, RosterStore.SKATER, RosterStore.SKATER, RosterStore.SKATER,
+		RosterStore.GOALIE, RosterStore.GOALIE, RosterStore.GOALIE, RosterStore.GOALIE, RosterStore.GOALIE};
+	static final int[] STAT_INDEXES = {0, 1, 2, 3, DerivedStats.SHARE_OR_SAVE, DerivedStats.RATIO_OR_GA_RATE, 0, 1, 2, DerivedStats.SHARE_OR_SAVE, DerivedStats.RATIO_OR_GA_RATE};
+	private static final List<String> TEXT_FIELDS = Arrays.asList("name", "birthplace", "position", "shoots", "type");
+	private static final String BARE_WORD = "[^\\s()=<>!~'\"][^\\s()=<>!~\"]*"; //an unquoted value word, which may hold a ' after its first character (O'Brien)
+	private static final List<String> KEYWORDS = Arrays.asList("AND", "OR", "NOT", "BETWEEN");
+	private static final int SHOOTS_STAT = 4;
+	private static final int SAMPLE_ROWS = 256; //rows read per term to estimate how many rows it keeps
+	private static final int AND = 0, OR = 1, NOT = 2, COMPARE = 3;
+	private final Node root;
+	private final String text;
+	
+	private RosterFilter(Node root){
+		this.root = root;
+		this.text = root.toString(true);
+	}
+	
+	/**
+	* method that parses a filter expression
+	* @param String expression (see the class comment)
+	* @return RosterFilter parsed filter, shared by every store it is evaluated on
+	*/
+	public static RosterFilter parse(String expression){
+		Parser parser = new Parser(expression);
+		Node root = parser.parseOr();
+		if(parser.peek() != null){
+			throw parser.error("unexpected " + parser.peek());
+		}
+		return new RosterFilter(root);
+	}
+	
+	/**
+	* method that returns the rows of a store that match, compiling the filter against the store's columns and dictionaries
+	* and testing every row in one pass (in parallel chunks on rosters of RosterSort.PARALLEL_THRESHOLD rows or more)
+	* @param RosterStore store to filter
+	* @return BitSet matching rows
+	*/
+	public BitSet evaluate(RosterStore store){
+		int size = store.size();
+		IntPredicate test = root.compile(store, size).test;
+		long[] words = new long[(size + 63) >>> 6];
+		int chunk = RosterSort.PARALLEL_THRESHOLD;
+		if(size < 2 * chunk){
+			fill(test, words, 0, size);
+			return BitSet.valueOf(words);
+		}
+		ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for(int start = 0; start < size; start += chunk){
+			int from = start;
+			int to = Math.min(start + chunk, size);
+			tasks.add(() -> {
+				fill(test, words, from, to); //chunks are whole words, so no two tasks write the same word
+				return null;
+			});
+		}
+		for(Future<Void> task : ForkJoinPool.commonPool().invokeAll(tasks)){
+			try{
+				task.get();
+			}
+			catch(InterruptedException | ExecutionException e){
+				throw new IllegalStateException("Exception in evaluate method: " + e, e);
+			}
+		}
+		return BitSet.valueOf(words);
+	}
+	
+	//sets the bit of each matching row in [from, to), building each 64-row word in a register
+	private static void fill(IntPredicate test, long[] words, int from, int to){
+		for(int base = from; base < to; base += 64){
+			long word = 0;
+			int end = Math.min(base + 64, to);
+			for(int row = base; row < end; row++){
+				word |= (test.test(row) ? 1L : 0L) << (row - base);
+			}
+			words[base >>> 6] = word;
+		}
+	}
+	
+	/**
+	* method that returns the position of a stat field in STAT_FIELDS (and so in STAT_TYPES and STAT_INDEXES)
+	* @param String field name in lower case (e.g., points)
+	* @return int position of the field, or -1 if it is not a stat
+	*/
+	static int statField(String field){
+		return Arrays.asList(STAT_FIELDS).indexOf(field);
+	}
+	
+	/**
+	* method that returns the filter written out in normal form (keywords in capitals, one space between tokens)
+	* @return String expression that parses to the same filter
+	*/
+	@Override
+	public String toString(){
+		return text;	
+	}
+	
+	//a term compiled against one store: its predicate, the share of rows it keeps, and its cost per row (1 = one column read)
+	private static final class Compiled{
+		private final IntPredicate test;
+		private final double selectivity;
+		private final double cost;
+		
+		private Compiled(IntPredicate test, double selectivity, double cost){
+			this.test = test;
+			this.selectivity = selectivity;
+			this.cost = cost;
+		}
+	}
+	
+	//parsed expression tree
+	private static final class Node{
+		private final int kind;
+		private final List<Node> children;
+		private final String field;
+		private final String operator;
+		private final String value;
+		private final int min;
+		private final int max;
+		
+		private Node(int kind, List<Node> children){
+			this(kind, children, null, null, null, 0, 0);
+		}
+		
+		private Node(int kind, List<Node> children, String field, String operator, String value, int min, int max){
+			this.kind = kind;
+			this.children = children;
+			this.field = field;
+			this.operator = operator;
+			this.value = value;
+			this.min = min;
+			this.max = max;
+		}
+		
+		private Compiled compile(RosterStore store, int size){
+			if(kind == COMPARE){
+				return compileComparison(store, size);
+			}
+			if(kind == NOT){
+				Compiled child = children.get(0).compile(store, size);
+				return new Compiled(child.test.negate(), 1 - child.selectivity, child.cost);
+			}
+			Compiled[] parts = new Compiled[children.size()];
+			for(int i = 0; i < parts.length; i++){
+				parts[i] = children.get(i).compile(store, size);
+			}
+			boolean and = kind == AND;
+			//cheap terms that decide the most rows go first: those that reject (AND) or accept (OR) most rows per unit of cost
+			Arrays.sort(parts, Comparator.comparingDouble(part -> part.cost / Math.max(and ? 1 - part.selectivity : part.selectivity, 1e-9)));
+			double pass = 1;
+			double cost = 0;
+			for(Compiled part : parts){
+				cost += pass * part.cost;
+				pass *= and ? part.selectivity : 1 - part.selectivity;
+			}
+			IntPredicate[] tests = new IntPredicate[parts.length];
+			for(int i = 0; i < parts.length; i++){
+				tests[i] = parts[i].test;
+			}
+			return new Compiled(chain(tests, 0, and), and ? pass : 1 - pass, cost);
+		}
+		
+		//folds the ordered terms into nested short-circuit lambdas the JIT can inline into one loop body
+		private static IntPredicate chain(IntPredicate[] tests, int from, boolean and){
+			IntPredicate first = tests[from];
+			if(from == tests.length - 1){
+				return first;
+			}
+			IntPredicate rest = chain(tests, from + 1, and);
+			return and ? row -> first.test(row) && rest.test(row) : row -> first.test(row) || rest.test(row);
+		}
+		
+		private Compiled compileComparison(RosterStore store, int size){
+			IntPredicate test;
+			double cost = 1;
+			ByteBuffer types = store.getTypes();
+			switch(field){
+				case "name":
+					String name = value.toLowerCase(Locale.ROOT);
+					test = operator.equals("~") ? row -> store.getLastName(row).toLowerCase(Locale.ROOT).contains(name) : row -> store.getLastName(row).equalsIgnoreCase(value);
+					cost = 8;
+					break;
+				case "birthplace":
+					RosterDictionary birthplaces = store.getBirthplaces();
+					boolean[] matching = new boolean[birthplaces.size()];
+					for(int code = 0; code < matching.length; code++){
+						String birthplace = birthplaces.decode(code);
+						matching[code] = operator.equals("~") ? birthplace.toLowerCase(Locale.ROOT).contains(value.toLowerCase(Locale.ROOT)) : birthplace.equalsIgnoreCase(value);
+					}
+					IntBuffer birthplaceCodes = store.getBirthplaceCodes();
+					test = row -> matching[birthplaceCodes.get(row)];
+					break;
+				case "position":
+					int mask = PlayerPosition.matching(value);
+					if(mask == 0){
+						throw new IllegalArgumentException("unknown position " + value);
+					}
+					ByteBuffer positionCodes = store.getPositionCodes();
+					test = row -> (mask >>> positionCodes.get(row) & 1) != 0;
+					break;
+				case "shoots":
+					int shoots = value.equalsIgnoreCase("R") ? RosterBitmapIndex.SHOOTS_R : value.equalsIgnoreCase("L") ? RosterBitmapIndex.SHOOTS_L : -1;
+					if(shoots < 0){
+						throw new IllegalArgumentException("expected shoots R or L, not " + value);
+					}
+					IntBuffer shootsColumn = store.getRawColumn(SHOOTS_STAT);
+					test = row -> types.get(row) == RosterStore.SKATER && shootsColumn.get(row) == shoots;
+					break;
+				case "type":
+					int type = value.equalsIgnoreCase("goalie") ? RosterStore.GOALIE : value.equalsIgnoreCase("skater") ? RosterStore.SKATER : -1;
+					if(type < 0){
+						throw new IllegalArgumentException("expected type goalie or skater, not " + value);
+					}
+					test = row -> types.get(row) == type;
+					break;
+				default:
+					int stat = statField(field);
+					int statType = STAT_TYPES[stat];
+					IntBuffer column = store.getStatColumn(STAT_INDEXES[stat]);
+					int low = min;
+					long span = (long)max - min;
+					if(operator.equals("!=")){
+						test = row -> types.get(row) == statType & column.get(row) != low;
+					}
+					else{
+						//one unsigned compare tests low <= value <= max (a negative span matches nothing)
+						test = span < 0 ? row -> false : row -> types.get(row) == statType & Integer.compareUnsigned(column.get(row) - low, (int)span) <= 0;
+					}
+					return new Compiled(test, sample(test, size), cost);
+			}
+			if(operator.equals("!=")){
+				test = test.negate();
+			}
+			return new Compiled(test, sample(test, size), cost);
+		}
+		
+		//share of an evenly spaced sample of rows that the term keeps
+		private static double sample(IntPredicate test, int size){
+			if(size == 0){
+				return 0;
+			}
+			int step = Math.max(size / SAMPLE_ROWS, 1);
+			int samples = 0;
+			int kept = 0;
+			for(int row = 0; row < size; row += step){
+				samples++;
+				kept += test.test(row) ? 1 : 0;
+			}
+			return (double)kept / samples;
+		}
+		
+		private String toString(boolean top){
+			switch(kind){
+				case COMPARE:
+					if(operator.equals("BETWEEN")){
+						return field + " BETWEEN " + min + " AND " + max;
+					}
+					if(!TEXT_FIELDS.contains(field)){
+						switch(operator){
+							case "<": return field + operator + (max + 1);
+							case "<=": return field + operator + max;
+							case ">": return field + operator + (min - 1);
+							default: return field + operator + min;
+						}
+					}
+					boolean bare = value.matches(BARE_WORD) && !KEYWORDS.contains(value.toUpperCase(Locale.ROOT));
+					return field + operator + (bare ? value : "'" + value.replace("'", "''") + "'"); //'' stands for a ' inside quotes
+				case NOT:
+					return "NOT " + children.get(0).toString(false);
+				default:
+					StringJoiner joined = new StringJoiner(kind == AND ? " AND " : " OR ", top ? "" : "(", top ? "" : ")");
+					for(Node child : children){
+						joined.add(child.toString(false));
+					}
+					return joined.toString();
+			}
+		}
+	}
+	
+	//recursive descent over the tokens: or := and (OR and)*, and := unary (AND unary)*, unary := NOT unary | ( or ) | comparison
+	private static final class Parser{
+		private static final Pattern TOKEN = Pattern.compile("\\s*(?:(<=|>=|!=|[=<>~()])|'((?:[^']|'')*)'|\"([^\"]*)\"|(" + BARE_WORD + "))");
+		private final String expression;
+		private final ArrayList<String> tokens = new ArrayList<String>();
+		private final ArrayList<Boolean> quoted = new ArrayList<Boolean>();
+		private final ArrayList<Integer> offsets = new ArrayList<Integer>();
+		private int next;
+		
+		private Parser(String expression){
+			this.expression = expression;
+			Matcher token = TOKEN.matcher(expression);
+			int at = 0;
+			while(at < expression.length() && !expression.substring(at).isBlank()){
+				if(!token.find(at) || token.start() != at){
+					throw new IllegalArgumentException("unexpected character at " + (at + 1) + " of filter " + expression);
+				}
+				String text = token.group(1) != null ? token.group(1) : token.group(2) != null ? token.group(2).replace("''", "'") : token.group(3) != null ? token.group(3) : token.group(4);
+				tokens.add(text);
+				quoted.add(token.group(2) != null || token.group(3) != null);
+				offsets.add(token.start(1) >= 0 ? token.start(1) : token.start(2) >= 0 ? token.start(2) - 1 : token.start(3) >= 0 ? token.start(3) - 1 : token.start(4));
+				at = token.end();
+			}
+			if(tokens.isEmpty()){
+				throw new IllegalArgumentException("empty filter");
+			}
+		}
+		
+		private String peek(){
+			return next < tokens.size() ? tokens.get(next) : null;	
+		}
+		
+		private boolean peekKeyword(String keyword){
+			return next < tokens.size() && !quoted.get(next) && tokens.get(next).equalsIgnoreCase(keyword);
+		}
+		
+		private IllegalArgumentException error(String message){
+			int at = next < offsets.size() ? offsets.get(next) + 1 : expression.length() + 1;
+			return new IllegalArgumentException(message + " at character " + at + " of filter " + expression);
+		}
+		
+		private Node parseOr(){
+			ArrayList<Node> terms = new ArrayList<Node>();
+			terms.add(parseAnd());
+			while(peekKeyword("OR")){
+				next++;
+				terms.add(parseAnd());
+			}
+			return terms.size() == 1 ? terms.get(0) : new Node(OR, terms);
+		}
+		
+		private Node parseAnd(){
+			ArrayList<Node> terms = new ArrayList<Node>();
+			terms.add(parseUnary());
+			while(peekKeyword("AND")){
+				next++;
+				terms.add(parseUnary());
+			}
+			return terms.size() == 1 ? terms.get(0) : new Node(AND, terms);
+		}
+		
+		private Node parseUnary(){
+			if(peekKeyword("NOT")){
+				next++;
+				return new Node(NOT, Collections.singletonList(parseUnary()));
+			}
+			if(peekKeyword("(")){
+				next++;
+				Node inner = parseOr();
+				if(!peekKeyword(")")){
+					throw error("expected )");
+				}
+				next++;
+				return inner;
+			}
+			return parseComparison();
+		}
+		
+		private Node parseComparison(){
+			String field = peek();
+			if(field == null || isOperator(field) || field.equals(")")){
+				throw error("expected a field");
+			}
+			field = field.toLowerCase(Locale.ROOT);
+			field = field.equals("+/-") ? "plusminus" : field;
+			boolean stat = statField(field) >= 0;
+			if(!stat && !TEXT_FIELDS.contains(field)){
+				throw error("unknown field " + peek() + "; expected " + String.join(", ", TEXT_FIELDS) + ", or a stat (" + String.join(", ", STAT_FIELDS) + ")");
+			}
+			next++;
+			if(peekKeyword("BETWEEN")){
+				if(!stat){
+					throw error(field + " is not a stat");
+				}
+				next++;
+				int low = number();
+				if(!peekKeyword("AND")){
+					throw error("expected AND");
+				}
+				next++;
+				return new Node(COMPARE, null, field, "BETWEEN", null, low, number());
+			}
+			String operator = peek();
+			if(operator == null || !isOperator(operator)){
+				throw error("expected =, !=, ~, <, <=, >, >= or BETWEEN after " + field);
+			}
+			next++;
+			if(stat){
+				int bound = number();
+				switch(operator){
+					case "=": return new Node(COMPARE, null, field, "=", null, bound, bound);
+					case "!=": return new Node(COMPARE, null, field, "!=", null, bound, bound);
+					case "<": return bound == Integer.MIN_VALUE ? new Node(COMPARE, null, field, "BETWEEN", null, 0, -1) : new Node(COMPARE, null, field, "<", null, Integer.MIN_VALUE, bound - 1);
+					case "<=": return new Node(COMPARE, null, field, "<=", null, Integer.MIN_VALUE, bound);
+					case ">": return bound == Integer.MAX_VALUE ? new Node(COMPARE, null, field, "BETWEEN", null, 0, -1) : new Node(COMPARE, null, field, ">", null, bound + 1, Integer.MAX_VALUE);
+					case ">=": return new Node(COMPARE, null, field, ">=", null, bound, Integer.MAX_VALUE);
+					default: throw error(operator + " does not apply to the stat " + field);
+				}
+			}
+			if(!operator.equals("=") && !operator.equals("!=") && !operator.equals("~")){
+				throw error(operator + " does not apply to " + field);
+			}
+			return new Node(COMPARE, null, field, operator, value(), 0, 0);
+		}
+		
+		//a quoted value, or bare words up to the next AND, OR, or )
+		private String value(){
+			if(next < tokens.size() && quoted.get(next)){
+				return tokens.get(next++);
+			}
+			StringJoiner words = new StringJoiner(" ");
+			while(next < tokens.size() && !quoted.get(next) && !peekKeyword("AND") && !peekKeyword("OR") && !peekKeyword(")") && !isOperator(tokens.get(next)) && !tokens.get(next).equals("(")){
+				words.add(tokens.get(next++));
+			}
+			if(words.length() == 0){
+				throw error("expected a value");
+			}
+			return words.toString();
+		}
+		
+		private int number(){
+			String word = peek();
+			try{
+				if(word == null || quoted.get(next)){
+					throw new NumberFormatException();
+				}
+				int number = Integer.parseInt(word);
+				next++;
+				return number;
+			}
+			catch(NumberFormatException e){
+				throw error("expected a whole number");
+			}
+		}
+		
+		private boolean isOperator(String token){
+			return token.equals("=") || token.equals("!=") || token.equals("~") || token.equals("<") || token.equals("<=") || token.equals(">") || token.equals(">=");
+		}
+	}
+}
+
+///////////////////////////////////////////////////////////////////////////////////////////////////
+/**
+* composite sort order over one or more stores, e.g.
+*	points DESC, goals DESC, plusminus DESC, name
+* keys: the RosterFilter stats, name, birthplace, position (LW, C, RW, D, G), type (skaters first) and team, each ASC (the default)
+* or DESC, with an optional LIMIT n; players without a stat (e.g., goalies ordered by points) follow those with it in either
+* direction, and players equal on every key keep store, then row order
+*/
+class RosterOrder{
+	//fields
+	private static final List<String> TEXT_KEYS = Arrays.asList("name", "birthplace", "position", "type", "team");
+	private static final Pattern LIMIT = Pattern.compile("(?i)(.*?)\\s+LIMIT\\s+(\\d+)\\s*");
+	private static final Comparator<String> TEXT_ORDER = String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.naturalOrder());
+	private final String[] fields;
+	private final boolean[] descending;
+	private final int limit;
+	
+	private RosterOrder(String[] fields, boolean[] descending, int limit){
+		this.fields = fields;
+		this.descending = descending;
+		this.limit = limit;
+	}
+	
+	/**
+	* method that parses a sort order
+	* @param String order (see the class comment)
+	* @return RosterOrder parsed order, shared by every sort it runs
+	*/
+	public static RosterOrder parse(String order){
+		int limit = Integer.MAX_VALUE;
+		Matcher limited = LIMIT.matcher(order.trim());
+		if(limited.matches()){
+			try{
+				limit = Integer.parseInt(limited.group(2));
+			}
+			catch(NumberFormatException e){
+				throw new IllegalArgumentException("LIMIT " + limited.group(2) + " is too large");
+			}
+			order = limited.group(1);
+		}
+		String[] keys = order.trim().split("\\s*,\\s*");
+		String[] fields = new String[keys.length];
+		boolean[] descending = new boolean[keys.length];
+		for(int i = 0; i < keys.length; i++){
+			String[] words = keys[i].split("\\s+");
+			if(words[0].isEmpty() || words.length > 2){
+				throw new IllegalArgumentException("expected <key> [ASC|DESC] in sort order '" + keys[i] + "'");
+			}
+			String field = words[0].toLowerCase(Locale.ROOT);
+			field = field.equals("+/-") ? "plusminus" : field;
+			if(!TEXT_KEYS.contains(field) && RosterFilter.statField(field) < 0){
+				throw new IllegalArgumentException("unknown sort key " + words[0] + "; expected " + String.join(", ", TEXT_KEYS) + ", or a stat (" + String.join(", ", RosterFilter.STAT_FIELDS) + ")");
+			}
+			if(words.length == 2 && !words[1].equalsIgnoreCase("ASC") && !words[1].equalsIgnoreCase("DESC")){
+				throw new IllegalArgumentException("expected ASC or DESC after " + field + ", not " + words[1]);
+			}
+			fields[i] = field;
+			descending[i] = words.length == 2 && words[1].equalsIgnoreCase("DESC");
+		}
+		return new RosterOrder(fields, descending, limit);
+	}
+	
+	public int getLimit(){
+		return limit;	
+	}
+	
+	/**
+	* method that sorts every row of the stores on primitive keys: each key becomes an unsigned column of at most 32 bits, and
+	* as many keys as fit are packed with the row's place in the current order into one long, so one primitive sort
+	* (Arrays.parallelSort on large inputs) orders by those keys and keeps earlier ties in place; passes run from the last
+	* keys to the first; names (nearly one per row) are only compared within runs still tied on the keys before them,
+	* so the usual 'points DESC, goals DESC, plusminus DESC, name' is one primitive sort and a few short string sorts
+	* @param List<RosterStore> stores to sort, in tie-breaking order
+	* @return long[] store index (RosterSort.key) and row (RosterSort.row) of the first getLimit() players in order
+	*/
+	public long[] sort(List<RosterStore> stores){
+		int[] offsets = new int[stores.size() + 1];
+		for(int i = 0; i < stores.size(); i++){
+			offsets[i + 1] = Math.addExact(offsets[i], stores.get(i).size());
+		}
+		int size = offsets[stores.size()];
+		List<Column> columns = new ArrayList<Column>();
+		for(int i = 0; i < fields.length; i++){
+			addColumns(columns, fields[i], descending[i], stores, offsets);
+		}
+		int packedColumns = 0;
+		while(packedColumns < columns.size() && columns.get(packedColumns).names == null){
+			packedColumns++;
+		}
+		int[] order = new int[size];
+		Arrays.setAll(order, i -> i);
+		int placeBits = 64 - Long.numberOfLeadingZeros(Math.max(size - 1, 1));
+		int keyBits = 63 - placeBits; //at least 32, so every column fits, and the sign bit stays clear
+		for(int end = packedColumns; end > 0;){
+			int start = end;
+			int bits = 0;
+			while(start > 0 && bits + columns.get(start - 1).bits <= keyBits){
+				bits += columns.get(--start).bits;
+			}
+			order = sortPass(columns.subList(start, end), order, placeBits);
+			end = start;
+		}
+		long[] sorted = new long[Math.min(size, limit)];
+		if(packedColumns < columns.size()){
+			sortTies(order, columns.subList(0, packedColumns), columns.subList(packedColumns, columns.size()), sorted.length);
+		}
+		for(int i = 0; i < sorted.length; i++){
+			int element = order[i];
+			int store = storeOf(offsets, element);
+			sorted[i] = RosterSort.pack(store, element - offsets[store]);
+		}
+		return sorted;
+	}
+	
+	//orders the rows by a run of columns (most significant first), breaking ties by their place in the current order
+	private static int[] sortPass(List<Column> columns, int[] order, int placeBits){
+		long[] packed = new long[order.length];
+		IntToLongFunction key = place -> {
+			int element = order[place];
+			long value = 0;
+			for(Column column : columns){
+				value = (value << column.bits) | (column.values[element] & 0xFFFFFFFFL);
+			}
+			return (value << placeBits) | place;
+		};
+		if(packed.length >= RosterSort.PARALLEL_THRESHOLD){
+			Arrays.parallelSetAll(packed, key);
+			Arrays.parallelSort(packed);
+		}
+		else{
+			Arrays.setAll(packed, key);
+			Arrays.sort(packed);
+		}
+		long placeMask = (1L << placeBits) - 1;
+		int[] sorted = new int[order.length];
+		for(int i = 0; i < sorted.length; i++){
+			sorted[i] = order[(int)(packed[i] & placeMask)];
+		}
+		return sorted;
+	}
+	
+	//sorts each run of elements tied on the sorted columns by the remaining columns (stable, so ties still keep their place),
+	//stopping after the run that holds the last element to return
+	private static void sortTies(int[] order, List<Column> sortedColumns, List<Column> remaining, int needed){
+		Comparator<Integer> byRemaining = (a, b) -> {
+			for(Column column : remaining){
+				int compared = column.compare(a, b);
+				if(compared != 0){
+					return compared;
+				}
+			}
+			return 0;
+		};
+		for(int from = 0; from < needed;){
+			int to = from + 1;
+			while(to < order.length && tied(sortedColumns, order[from], order[to])){
+				to++;
+			}
+			if(to - from > 1){
+				Integer[] run = new Integer[to - from];
+				for(int i = 0; i < run.length; i++){
+					run[i] = order[from + i];
+				}
+				Arrays.sort(run, byRemaining);
+				for(int i = 0; i < run.length; i++){
+					order[from + i] = run[i];
+				}
+			}
+			from = to;
+		}
+	}
+	
+	private static boolean tied(List<Column> columns, int a, int b){
+		for(Column column : columns){
+			if(column.values[a] != column.values[b]){
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	//the last store whose first element is at or before the element (stores may be empty)
+	private static int storeOf(int[] offsets, int element){
+		int low = 0;
+		int high = offsets.length - 2;
+		while(low < high){
+			int middle = (low + high + 1) >>> 1;
+			if(offsets[middle] <= element){
+				low = middle;
+			}
+			else{
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+	
+	//turns one key into columns of unsigned ranks, one value per element (a stat adds a 1-bit column first when some rows lack it)
+	private static void addColumns(List<Column> columns, String field, boolean descending, List<RosterStore> stores, int[] offsets){
+		int size = offsets[stores.size()];
+		int[] values = new int[size];
+		int stat = RosterFilter.statField(field);
+		if(stat >= 0){
+			int type = RosterFilter.STAT_TYPES[stat];
+			long min = Integer.MAX_VALUE;
+			long max = Integer.MIN_VALUE;
+			boolean missing = false;
+			for(RosterStore store : stores){
+				IntBuffer column = store.getStatColumn(RosterFilter.STAT_INDEXES[stat]);
+				ByteBuffer types = store.getTypes();
+				for(int row = 0; row < store.size(); row++){
+					if(types.get(row) == type){
+						min = Math.min(min, column.get(row));
+						max = Math.max(max, column.get(row));
+					}
+					else{
+						missing = true;
+					}
+				}
+			}
+			if(min > max){
+				return; //no row has the stat, so every row ties
+			}
+			int[] flags = missing ? new int[size] : null;
+			for(int s = 0; s < stores.size(); s++){
+				RosterStore store = stores.get(s);
+				IntBuffer column = store.getStatColumn(RosterFilter.STAT_INDEXES[stat]);
+				ByteBuffer types = store.getTypes();
+				for(int row = 0, element = offsets[s]; row < store.size(); row++, element++){
+					if(types.get(row) == type){
+						values[element] = (int)(descending ? max - column.get(row) : column.get(row) - min);
+					}
+					else{
+						flags[element] = 1;
+					}
+				}
+			}
+			if(missing){
+				columns.add(new Column(flags, 1));
+			}
+			columns.add(new Column(values, 64 - Long.numberOfLeadingZeros(max - min)));
+			return;
+		}
+		int distinct;
+		if(field.equals("position") || field.equals("type")){
+			distinct = field.equals("position") ? PlayerPosition.count() : 2;
+			for(int s = 0; s < stores.size(); s++){
+				RosterStore store = stores.get(s);
+				ByteBuffer codes = field.equals("position") ? store.getPositionCodes() : store.getTypes();
+				for(int row = 0, element = offsets[s]; row < store.size(); row++, element++){
+					values[element] = codes.get(row);
+				}
+			}
+		}
+		else if(field.equals("name")){
+			String[] names = new String[size];
+			for(int s = 0; s < stores.size(); s++){
+				RosterStore store = stores.get(s);
+				for(int row = 0, element = offsets[s]; row < store.size(); row++, element++){
+					names[element] = store.getLastName(row);
+				}
+			}
+			columns.add(new Column(names, descending));
+			return;
+		}
+		else{
+			//birthplaces and teams rank their distinct values across every store, so only those values are compared as strings
+			List<String[]> valuesByCode = new ArrayList<String[]>();
+			for(RosterStore store : stores){
+				String[] storeValues;
+				if(field.equals("birthplace")){
+					storeValues = new String[store.getBirthplaces().size()];
+					Arrays.setAll(storeValues, store.getBirthplaces()::decode);
+				}
+				else{
+					storeValues = new String[]{store.getLabel() == null ? "" : store.getLabel()};
+				}
+				valuesByCode.add(storeValues);
+			}
+			List<int[]> ranks = new ArrayList<int[]>();
+			distinct = rank(valuesByCode, ranks);
+			for(int s = 0; s < stores.size(); s++){
+				RosterStore store = stores.get(s);
+				int[] storeRanks = ranks.get(s);
+				IntBuffer birthplaceCodes = store.getBirthplaceCodes();
+				for(int row = 0, element = offsets[s]; row < store.size(); row++, element++){
+					values[element] = field.equals("birthplace") ? storeRanks[birthplaceCodes.get(row)] : storeRanks[0];
+				}
+			}
+		}
+		if(distinct <= 1){
+			return;
+		}
+		if(descending){
+			for(int i = 0; i < size; i++){
+				values[i] = distinct - 1 - values[i];
+			}
+		}
+		columns.add(new Column(values, 32 - Integer.numberOfLeadingZeros(distinct - 1)));
+	}
+	
+	//fills one rank array per store (indexed like its values) with the place of each value among the distinct values of every store
+	private static int rank(List<String[]> valuesByCode, List<int[]> ranks){
+		HashMap<String, Integer> codes = new HashMap<String, Integer>();
+		for(String[] values : valuesByCode){
+			for(String value : values){
+				codes.putIfAbsent(value, 0);
+			}
+		}
+		String[] sorted = codes.keySet().toArray(new String[0]);
+		Arrays.sort(sorted, TEXT_ORDER);
+		for(int i = 0; i < sorted.length; i++){
+			codes.put(sorted[i], i);
+		}
+		for(String[] values : valuesByCode){
+			int[] storeRanks = new int[values.length];
+			for(int i = 0; i < values.length; i++){
+				storeRanks[i] = codes.get(values[i]);
+			}
+			ranks.add(storeRanks);
+		}
+		return sorted.length;
+	}
+	
+	/**
+	* method that returns the order written out in normal form (directions in capitals, keys separated by ', ')
+	* @return String order that parses to the same order
+	*/
+	@Override
+	public String toString(){
+		StringJoiner text = new StringJoiner(", ");
+		for(int i = 0; i < fields.length; i++){
+			text.add(fields[i] + (descending[i] ? " DESC" : ""));
+		}
+		return text + (limit == Integer.MAX_VALUE ? "" : " LIMIT " + limit);
+	}
+	
+	//one key (or the missing-stat flag of a key) as unsigned values of a number of bits, or as the names of a name key
+	private static final class Column{
+		private final int[] values;
+		private final int bits;
+		private final String[] names;
+		private final boolean descending;
+		
+		private Column(int[] values, int bits){
+			this.values = values;
+			this.bits = bits;
+			this.names = null;
+			this.descending = false;
+		}
+		
+		private Column(String[] names, boolean descending){
+			this.values = null;
+			this.bits = 0;
+			this.names = names;
+			this.descending = descending;
+		}
+		
+		private int compare(int a, int b){
+			if(names == null){
+				return Integer.compareUnsigned(values[a], values[b]);
+			}
+			int compared = TEXT_ORDER.compare(names[a], names[b]);
+			return descending ? -compared : compared;
+		}
+	}
+}
+
+///////////////////////////////////////////////////////////////////////////////////////////////////
+class RosterAggregator{
+	//fields
+	public static final int BIRTHPLACE = 0, POSITION = 1, SHOOTS = 2;
+	public static final String[] GROUP_BY = {"Birthplace", "Position", "Shoots"};
+	private static final String[] SHOOTS_NAMES = {"R", "L"};
+	private static final int SHOOTS_STAT = 4;
+	private final RosterStore store;
+	private final int groupBy;
+	private final int stat;
+	
+	/**
+	* constructor that initializes what the rows are grouped by and which stat is aggregated
+	* @param RosterStore store that holds the players
+	* @param int BIRTHPLACE, POSITION, or SHOOTS
+	* @param int stats array index value to aggregate
+	*/
+	public RosterAggregator(RosterStore store, int groupBy, int stat){
+		if(groupBy < BIRTHPLACE || groupBy > SHOOTS){
+			throw new IllegalArgumentException("Unknown group " + groupBy);
+		}
+		this.store = store;
+		this.groupBy = groupBy;
+		this.stat = stat;
+	}
+	
+	/**
+	* method that aggregates the stat of some rows by group, splitting rosters of RosterSort.PARALLEL_THRESHOLD rows or more
+	* into fork-join tasks whose partial groups are merged as the tasks join
+	* @param int[] row numbers to aggregate (rows without the stat, or without a shoots value when grouping by shoots, are skipped)
+	* @return Group[] one entry per group code, null for a group with no rows
+	*/
+	public Group[] aggregate(int[] rows){
+		if(rows.length < RosterSort.PARALLEL_THRESHOLD){
+			return partial(rows, 0, rows.length);
+		}
+		return ForkJoinPool.commonPool().invoke(new AggregateTask(rows, 0, rows.length));
+	}
+	
+	/**
+	* method that aggregates the stat of some rows by group name, for merging with the groups of other stores
+	* @param int[] row numbers to aggregate
+	* @return Map<String, Group> groups with rows, in the order they are reported
+	*/
+	public Map<String, Group> aggregateByName(int[] rows){
+		Group[] groups = aggregate(rows);
+		LinkedHashMap<String, Group> named = new LinkedHashMap<String, Group>();
+		for(int code : getGroupOrder()){
+			if(groups[code] != null){
+				named.put(getGroupName(code), groups[code]);
+			}
+		}
+		return named;
+	}
+	
+	/**
+	* method that merges the groups of several stores by name (e.g., the partitions of a league, whose codes differ)
+	* @param int BIRTHPLACE, POSITION, or SHOOTS
+	* @param List<Map<String, Group>> groups of each store from aggregateByName (merged into, so not reusable)
+	* @return Map<String, Group> merged groups in report order (alphabetical, or R then L for shoots)
+	*/
+	public static Map<String, Group> mergeByName(int groupBy, List<Map<String, Group>> stores){
+		Comparator<String> order = groupBy == SHOOTS ? Comparator.comparingInt(name -> Arrays.asList(SHOOTS_NAMES).indexOf(name)) : Comparator.<String>naturalOrder();
+		TreeMap<String, Group> merged = new TreeMap<String, Group>(order);
+		for(Map<String, Group> groups : stores){
+			for(Map.Entry<String, Group> group : groups.entrySet()){
+				merged.merge(group.getKey(), group.getValue(), (left, right) -> {
+					left.merge(right);
+					return left;
+				});
+			}
+		}
+		return merged;
+	}
+	
+	/**
+	* method that returns the group codes in the order they are reported (alphabetical for birthplace and position)
+	* @return int[] group codes
+	*/
+	public int[] getGroupOrder(){
+		switch(groupBy){
+			case BIRTHPLACE: return store.getBirthplaces().getSortedCodes().clone();
+			case POSITION: return store.getPositions().getSortedCodes().clone();
+			default: return new int[]{0, 1};
+		}
+	}
+	
+	/**
+	* method that returns the name of a group code
+	* @param int group code
+	* @return String birthplace, position, or R/L
+	*/
+	public String getGroupName(int code){
+		switch(groupBy){
+			case BIRTHPLACE: return store.getBirthplaces().decode(code);
+			case POSITION: return store.getPositions().decode(code);
+			default: return SHOOTS_NAMES[code];
+		}
+	}
+	
+	private int groupCount(){
+		switch(groupBy){
+			case BIRTHPLACE: return store.getBirthplaces().size();
+			case POSITION: return store.getPositions().size();
+			default: return SHOOTS_NAMES.length;
+		}
+	}
+	
+	//aggregates one slice of the rows into a fresh set of groups
+	private Group[] partial(int[] rows, int from, int to){
+		Group[] groups = new Group[groupCount()];
+		IntBuffer column = store.getStatColumn(stat);
+		IntBuffer codes = groupBy == BIRTHPLACE ? store.getBirthplaceCodes() : store.getStatColumn(SHOOTS_STAT);
+		ByteBuffer positionCodes = store.getPositionCodes();
+		for(int i = from; i < to; i++){
+			int row = rows[i];
+			if(!store.hasStat(row, stat) || (groupBy == SHOOTS && store.getStatCount(row) <= SHOOTS_STAT)){
+				continue;
+			}
+			int code = groupBy == POSITION ? positionCodes.get(row) : codes.get(row);
+			if(code < 0 || code >= groups.length){
+				continue;
+			}
+			if(groups[code] == null){
+				groups[code] = new Group();
+			}
+			groups[code].add(column.get(row));
+		}
+		return groups;
+	}
+	
+	private static Group[] merge(Group[] left, Group[] right){
+		for(int code = 0; code < left.length; code++){
+			if(left[code] == null){
+				left[code] = right[code];
+			}
+			else if(right[code] != null){
+				left[code].merge(right[code]);
+			}
+		}
+		return left;
+	}
+	
+	private final class AggregateTask extends RecursiveTask<Group[]>{
+		private static final long serialVersionUID = 1L;
+		private final int[] rows;
+		private final int from;
+		private final int to;
+		
+		private AggregateTask(int[] rows, int from, int to){
+			this.rows = rows;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected Group[] compute(){
+			if(to - from < RosterSort.PARALLEL_THRESHOLD){
+				return partial(rows, from, to);
+			}
+			int middle = (from + to) >>> 1;
+			AggregateTask left = new AggregateTask(rows, from, middle);
+			left.fork();
+			Group[] right = new AggregateTask(rows, middle, to).compute();
+			return merge(left.join(), right);
+		}
+	}
+	
+	/**
+	* count, sum, min, max and the values of one group (the values are kept so any percentile can be read)
+	*/
+	public static final class Group{
+		private int count;
+		private long sum;
+		private int min = Integer.MAX_VALUE;
+		private int max = Integer.MIN_VALUE;
+		private int[] values = new int[8];
+		private boolean sorted;
+		
+		private void add(int value){
+			if(count == values.length){
+				values = Arrays.copyOf(values, count * 2);
+			}
+			values[count++] = value;
+			sum += value;
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+			sorted = false;
+		}
+		
+		private void merge(Group other){
+			if(count + other.count > values.length){
+				values = Arrays.copyOf(values, Math.max(count + other.count, values.length * 2));
+			}
+			System.arraycopy(other.values, 0, values, count, other.count);
+			count += other.count;
+			sum += other.sum;
+			min = Math.min(min, other.min);
+			max = Math.max(max, other.max);
+			sorted = false;
+		}
+		
+		/**
+		* method that returns a percentile of the group by the nearest-rank method (the values are sorted on the first call)
+		* @param double percentile from 0 to 100 (50 is the median)
+		* @return int smallest value with at least that percent of the group at or below it
+		*/
+		public synchronized int getPercentile(double percentile){
+			if(percentile < 0 || percentile > 100){
+				throw new IllegalArgumentException("percentile must be between 0 and 100");
+			}
+			if(!sorted){
+				Arrays.sort(values, 0, count);
+				sorted = true;
+			}
+			int rank = (int)Math.ceil(percentile / 100 * count);
+			return values[Math.max(rank, 1) - 1];
+		}
+		
+		//getters
+		public int getCount(){
+			return count;	
+		}
+		
+		public long getSum(){
+			return sum;	
+		}
+		
+		public double getMean(){
+			return (double)sum / count;	
+		}
+		
+		public int getMin(){
+			return min;	
+		}
+		
+		public int getMax(){
+			return max;	
+		}
+	}
+}
+
+///////////////////////////////////////////////////////////////////////////////////////////////////
+class RosterLoader{
+	//fields
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final int MAX_FIELDS = 3 + RosterStore.MAX_STATS;
+	private final RosterStore store;
+	private final int[] stats = new int[RosterStore.MAX_STATS];
+	private final int[] fieldStart = new int[MAX_FIELDS + 1];
+	private final int[] fieldEnd = new int[MAX_FIELDS + 1];
+	private byte[] fields = new byte[256];
+	private long lineNumber;
+	
+	/**
+	* constructor that initializes the store that loaded rows are appended to
+	* @param RosterStore store to fill
+	*/
+	public RosterLoader(RosterStore store){
+		this.store = store;
+	}
+	
+	/**
+	* method that reads a roster CSV file into a new store
+	* @param Path CSV file with lines of last name, position, birthplace, then 5 skater or 3 goalie stats
+	* @return RosterStore store with one row per line
+	*/
+	public static RosterStore load(Path file) throws IOException{
+		RosterStore store = new RosterStore();
+		new RosterLoader(store).read(file);
+		return store;
+	}
+	
+	/**
+	* method that streams a CSV file into the store in fixed-size chunks, so memory grows with the rows loaded rather than the file
+	* (a first line whose stats are not numbers is skipped as a header; blank lines and lines starting with # are ignored)
+	* @param Path CSV file to read
+	*/
+	public void read(Path file) throws IOException{
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			lineNumber = 0;
+			int lineStart = 0;
+			boolean eof = false;
+			while(!eof){
+				eof = channel.read(buffer) < 0;
+				byte[] bytes = buffer.array();
+				int limit = buffer.position();
+				for(int i = lineStart; i < limit; i++){
+					if(bytes[i] == '\n'){
+						parseLine(bytes, lineStart, i);
+						lineStart = i + 1;
+					}
+				}
+				if(eof){
+					if(lineStart < limit){
+						parseLine(bytes, lineStart, limit);
+					}
+				}
+				else if(lineStart == 0 && limit == bytes.length){
+					//a single line longer than the buffer
+					ByteBuffer larger = ByteBuffer.allocate(bytes.length * 2);
+					buffer.flip();
+					larger.put(buffer);
+					buffer = larger;
+				}
+				else{
+					buffer.limit(limit);
+					buffer.position(lineStart);
+					buffer.compact();
+					lineStart = 0;
+				}
+			}
+		}
+	}
+	
+	//splits one line into fields (honouring "quoted, fields"), then appends it to the store
+	private void parseLine(byte[] bytes, int start, int end) throws IOException{
+		lineNumber++;
+		if(end > start && bytes[end - 1] == '\r'){
+			end--;
+		}
+		while(start < end && bytes[start] == ' '){
+			start++;
+		}
+		if(start == end || bytes[start] == '#'){
+			return;
+		}
+		if(fields.length < end - start){
+			fields = new byte[(end - start) * 2];
+		}
+		int count = 0;
+		int length = 0;
+		int i = start;
+		while(i <= end){
+			if(count == fieldStart.length){
+				throw new IOException("Line " + lineNumber + " has more than " + MAX_FIELDS + " fields");
+			}
+			while(i < end && bytes[i] == ' '){
+				i++;
+			}
+			fieldStart[count] = length;
+			if(i < end && bytes[i] == '"'){
+				i++;
+				while(i < end){
+					if(bytes[i] == '"'){
+						if(i + 1 < end && bytes[i + 1] == '"'){
+							fields[length++] = '"';
+							i += 2;
+							continue;
+						}
+						i++;
+						break;
+					}
+					fields[length++] = bytes[i++];
+				}
+				while(i < end && bytes[i] != ','){
+					i++;
+				}
+			}
+			else{
+				while(i < end && bytes[i] != ','){
+					fields[length++] = bytes[i++];
+				}
+				while(length > fieldStart[count] && fields[length - 1] == ' '){
+					length--;
+				}
+			}
+			fieldEnd[count++] = length;
+			i++;
+		}
+		int statCount = count - 3;
+		if(statCount != RosterStore.MAX_STATS && statCount != RosterStore.GOALIE_STATS){
+			throw new IOException("Line " + lineNumber + " has " + statCount + " stats; expected 5 (skater) or 3 (goalie)");
+		}
+		for(int f = 0; f < statCount; f++){
+			if(!parseInt(f, fieldStart[f + 3], fieldEnd[f + 3])){
+				if(lineNumber == 1){
+					return; //header
+				}
+				throw new IOException("Line " + lineNumber + " has a stat that is not a whole number");
+			}
+		}
+		int positionCode = PlayerPosition.codeOf(fields, fieldStart[1], fieldEnd[1] - fieldStart[1]);
+		if(positionCode < 0){
+			try{
+				positionCode = PlayerPosition.parse(new String(fields, fieldStart[1], fieldEnd[1] - fieldStart[1], StandardCharsets.UTF_8)).getCode();
+			}
+			catch(IllegalArgumentException e){
+				throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+			}
+		}
+		if(PlayerPosition.fromCode(positionCode).isGoalie() != (statCount == RosterStore.GOALIE_STATS)){
+			throw new IOException("Line " + lineNumber + " is a " + PlayerPosition.fromCode(positionCode).getLabel() + " with " + statCount + " stats; expected 5 for a skater and 3 for a goalie");
+		}
+		store.add(new String(fields, fieldStart[0], fieldEnd[0] - fieldStart[0], StandardCharsets.UTF_8),
+			positionCode,
+			store.getBirthplaces().encode(fields, fieldStart[2], fieldEnd[2] - fieldStart[2]),
+			stats, statCount);
+	}
+	
+	//parses a signed decimal straight from the field bytes into stats[stat]
+	private boolean parseInt(int stat, int start, int end){
+		boolean negative = start < end && fields[start] == '-';
+		if(negative || (start < end && fields[start] == '+')){
+			start++;
+		}
+		if(start == end){
+			return false;
+		}
+		long value = 0;
+		for(int i = start; i < end; i++){
+			int digit = fields[i] - '0';
+			if(digit < 0 || digit > 9 || value > Integer.MAX_VALUE){
+				return false;
+			}
+			value = value * 10 + digit;
+		}
+		value = negative ? -value : value;
+		if(value < Integer.MIN_VALUE || value > Integer.MAX_VALUE){
+			return false;
+		}
+		stats[stat] = (int)value;
+		return true;
+	}
+}
+
+///////////////////////////////////////////////////////////////////////////////////////////////////
+/**
+* versioned binary roster file (.ihd): the store's columns, dictionaries, sorted stat indexes and bitmap index,
+* written once and memory-mapped on load so a large roster is ready to query without parsing or index building
+*
+* layout (little-endian): magic "IHDS", format version, row count, section count, then the offset and length of each section:
+* META (label, birthplace then position dictionaries with the player count per code, and the type, stat and size of each
+* sorted index), NAMES (int length and UTF-8 bytes per row), NAME_OFFSETS (each row's offset in NAMES), position/type/stat
+* count bytes, birthplace codes, stat columns, BIRTHPLACE_STARTS and BIRTHPLACE_ROWS (the rows grouped by birthplace),
+* BITMAPS (position then shoots bitmaps), then the rows and keys of each sorted index
+*/
+class RosterSnapshotFile{
+	//fields
+	public static final int MAGIC = 0x53444849; //"IHDS" read as a little-endian int
+	public static final int FORMAT_VERSION = 2;
+	public static final String EXTENSION = ".ihd";
+	private static final int META = 0, NAMES = 1, NAME_OFFSETS = 2, POSITIONS = 3, TYPES = 4, STAT_COUNTS = 5, BIRTHPLACES = 6, STATS = 7;
+	private static final int BIRTHPLACE_STARTS = STATS + RosterStore.MAX_STATS, BIRTHPLACE_ROWS = BIRTHPLACE_STARTS + 1, BITMAPS = BIRTHPLACE_ROWS + 1;
+	private static final int INDEXES = BITMAPS + 1; //the first of two sections (rows, keys) per sorted index
+	private static final int HEADER_BYTES = 16; //magic, version, rows, section count; the section table follows
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static volatile boolean verifyOnLoad;
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+	private long written; //bytes flushed to the channel so far
+	
+	private RosterSnapshotFile(FileChannel channel){
+		this.channel = channel;
+	}
+	
+	/**
+	* method that tells a snapshot file from a roster CSV file by its first four bytes
+	* @param Path file to check
+	* @return boolean true if the file starts with the snapshot magic number
+	*/
+	public static boolean isSnapshot(Path file) throws IOException{
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+			ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+			while(magic.hasRemaining() && channel.read(magic) >= 0){
+			}
+			return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+		}
+	}
+	
+	/**
+	* method that chooses whether loading a snapshot also checks every row against the dictionaries and every stored index
+	* against the rows; this reads the whole file, so it is off by default and loading only checks the file's structure
+	* (header, format version, and section lengths and offsets) in time that does not grow with the rows
+	* @param boolean true to check the contents of every snapshot loaded from now on
+	*/
+	public static void setVerifyOnLoad(boolean verify){
+		verifyOnLoad = verify;
+	}
+	
+	/**
+	* method that loads a roster from a snapshot file or, failing the magic number check, from a roster CSV file
+	* @param Path snapshot or CSV file
+	* @return RosterStore loaded store
+	*/
+	public static RosterStore loadRoster(Path file) throws IOException{
+		if(!isSnapshot(file)){
+			return RosterLoader.load(file);
+		}
+		return RosterStore.isOffHeapByDefault() ? map(file) : read(file);
+	}
+	
+	/**
+	* method that writes a store and its indexes, building every menu stat's sorted index and the bitmap index first
+	* @param RosterStore store to save
+	* @param Path file to write (replaced if it exists)
+	*/
+	public static void write(RosterStore store, Path file) throws IOException{
+		synchronized(store){
+			ArrayList<SortedStatIndex> indexes = new ArrayList<SortedStatIndex>();
+			for(int type : new int[]{RosterStore.SKATER, RosterStore.GOALIE}){
+				for(int i = 0; i < RosterStore.menuSize(type); i++){
+					int stat = RosterStore.menuStat(type, i);
+					StatRangeIndex index = store.getSortedIndex(type, stat);
+					indexes.add(index instanceof SortedStatIndex ? (SortedStatIndex)index : new SortedStatIndex(store, type, stat));
+				}
+			}
+			RosterBitmapIndex bitmaps = store.getBitmapIndex();
+			try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)){
+				new RosterSnapshotFile(channel).writeStore(store, indexes, bitmaps);
+			}
+		}
+	}
+	
+	/**
+	* method that reads a snapshot file section by section into a new heap store with bulk reads
+	* @param Path snapshot file written by write
+	* @return RosterStore store with its sorted and bitmap indexes already installed
+	*/
+	public static RosterStore read(Path file) throws IOException{
+		return open(file, false);
+	}
+	
+	/**
+	* method that maps a snapshot file and returns an off-heap store whose columns, sorted indexes and birthplace row lists are
+	* mappings of their sections, so nothing but the dictionaries and the position/shoots bitmaps is read up front and the OS
+	* pages the rest in on demand; each section is mapped on its own, so only a single section must fit in one 2 GB mapping
+	* (the mappings are read-only: a game update first copies the stat column it changes to direct memory, and the file never changes)
+	* @param Path snapshot file written by write
+	* @return RosterStore off-heap store with its sorted and bitmap indexes already installed
+	*/
+	public static RosterStore map(Path file) throws IOException{
+		return open(file, true);
+	}
+	
+	private static RosterStore open(Path file, boolean mapped) throws IOException{
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+			RosterSnapshotFile in = new RosterSnapshotFile(channel);
+			return in.readStore(file, mapped);
+		}
+		catch(BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException | NegativeArraySizeException e){
+			throw new IOException("corrupt snapshot " + file + ": it ends early or holds an impossible length (" + e + ")", e);
+		}
+	}
+	
+	private void writeStore(RosterStore store, List<SortedStatIndex> indexes, RosterBitmapIndex bitmaps) throws IOException{
+		int rows = store.size();
+		long[] offsets = new long[INDEXES + 2 * indexes.size()];
+		putInt(MAGIC);
+		putInt(FORMAT_VERSION);
+		putInt(rows);
+		putInt(offsets.length);
+		for(int i = 0; i < offsets.length; i++){ //the section table, filled in once every section is written
+			putLong(0);
+			putLong(0);
+		}
+		offsets[META] = position();
+		putString(store.getLabel());
+		for(RosterDictionary dictionary : new RosterDictionary[]{store.getBirthplaces(), store.getPositions()}){
+			putInt(dictionary.size());
+			for(int code = 0; code < dictionary.size(); code++){
+				putString(dictionary.decode(code));
+				putInt(dictionary.getCount(code));
+			}
+		}
+		putInt(indexes.size());
+		for(SortedStatIndex index : indexes){
+			putInt(index.getType());
+			putInt(index.getStat());
+			putInt(index.size());
+		}
+		offsets[NAMES] = position();
+		int[] nameOffsets = new int[rows];
+		for(int row = 0; row < rows; row++){
+			long offset = position() - offsets[NAMES];
+			if(offset > Integer.MAX_VALUE){
+				throw new IOException("the names of " + rows + " players take more than 2 GB");
+			}
+			nameOffsets[row] = (int)offset;
+			putString(store.getLastName(row));
+		}
+		offsets[NAME_OFFSETS] = position();
+		putInts(IntBuffer.wrap(nameOffsets), rows);
+		offsets[POSITIONS] = position();
+		putBytes(store.getPositionCodes(), rows);
+		offsets[TYPES] = position();
+		putBytes(store.getTypes(), rows);
+		offsets[STAT_COUNTS] = position();
+		for(int row = 0; row < rows; row++){
+			ensure(1);
+			buffer.put((byte)store.getStatCount(row));
+		}
+		offsets[BIRTHPLACES] = position();
+		putInts(store.getBirthplaceCodes(), rows);
+		for(int stat = 0; stat < RosterStore.MAX_STATS; stat++){
+			offsets[STATS + stat] = position();
+			putInts(store.getRawColumn(stat), rows);
+		}
+		offsets[BIRTHPLACE_STARTS] = position();
+		putInts(bitmaps.getBirthplaceStarts(), store.getBirthplaces().size() + 1);
+		offsets[BIRTHPLACE_ROWS] = position();
+		putInts(bitmaps.getBirthplaceRows(), rows);
+		offsets[BITMAPS] = position();
+		for(BitSet[] bitmapSet : new BitSet[][]{bitmaps.getPositionBits(), bitmaps.getShootsBits()}){
+			putInt(bitmapSet.length);
+			for(BitSet bits : bitmapSet){
+				long[] words = bits.toLongArray();
+				putInt(words.length);
+				for(long word : words){
+					putLong(word);
+				}
+			}
+		}
+		for(int i = 0; i < indexes.size(); i++){
+			SortedStatIndex index = indexes.get(i);
+			offsets[INDEXES + 2 * i] = position();
+			putInts(index.getRows(), index.size());
+			offsets[INDEXES + 2 * i + 1] = position();
+			putInts(index.getKeys(), index.size());
+		}
+		long end = position();
+		flush();
+		ByteBuffer table = ByteBuffer.allocate(offsets.length * 16).order(ByteOrder.LITTLE_ENDIAN);
+		for(int i = 0; i < offsets.length; i++){
+			table.putLong(offsets[i]).putLong((i + 1 < offsets.length ? offsets[i + 1] : end) - offsets[i]);
+		}
+		table.flip();
+		while(table.hasRemaining()){
+			channel.write(table, HEADER_BYTES + table.position());
+		}
+	}
+	
+	//reads the columns and sorted indexes as copies on the heap, or as mappings of their sections when mapped
+	private RosterStore readStore(Path file, boolean mapped) throws IOException{
+		long fileSize = channel.size();
+		if(fileSize < HEADER_BYTES){
+			throw new IOException(file + " is not a roster snapshot");
+		}
+		ByteBuffer header = readBytes(0, HEADER_BYTES);
+		if(header.getInt() != MAGIC){
+			throw new IOException(file + " is not a roster snapshot");
+		}
+		int version = header.getInt();
+		if(version != FORMAT_VERSION){
+			throw new IOException(file + " is snapshot format " + version + "; this version reads format " + FORMAT_VERSION);
+		}
+		int rows = header.getInt();
+		int sections = header.getInt();
+		if(rows < 0 || sections < INDEXES || sections > INDEXES + 4 * RosterStore.ALL_STATS || (sections - INDEXES) % 2 != 0 || HEADER_BYTES + sections * 16L > fileSize){
+			throw corrupt(file, rows + " rows in " + sections + " sections");
+		}
+		ByteBuffer table = readBytes(HEADER_BYTES, sections * 16);
+		long[] offsets = new long[sections];
+		long[] lengths = new long[sections];
+		for(int i = 0; i < sections; i++){
+			offsets[i] = table.getLong();
+			lengths[i] = table.getLong();
+			if(offsets[i] < HEADER_BYTES + sections * 16L || lengths[i] < 0 || offsets[i] > fileSize || lengths[i] > fileSize - offsets[i]){
+				throw corrupt(file, "section " + i + " of " + lengths[i] + " bytes at " + offsets[i] + " is not in the file's " + fileSize + " bytes");
+			}
+		}
+		//META: label, dictionaries and the sorted index directory
+		ByteBuffer meta = section(file, offsets[META], lengths[META], mapped);
+		String label = getString(meta);
+		String[][] dictionaryValues = new String[2][];
+		int[][] dictionaryCounts = new int[2][];
+		for(int d = 0; d < 2; d++){
+			int size = getCount(meta, file, 8, "dictionary values");
+			dictionaryValues[d] = new String[size];
+			dictionaryCounts[d] = new int[size];
+			for(int code = 0; code < size; code++){
+				dictionaryValues[d][code] = getString(meta);
+				dictionaryCounts[d][code] = meta.getInt();
+				if(dictionaryValues[d][code] == null){
+					throw corrupt(file, "dictionary " + d + " has no value for code " + code);
+				}
+			}
+		}
+		String[] positionLabels = dictionaryValues[1];
+		if(positionLabels.length != PlayerPosition.count()){
+			throw new IOException(file + " has " + positionLabels.length + " positions; expected " + PlayerPosition.count());
+		}
+		for(int code = 0; code < positionLabels.length; code++){
+			if(!positionLabels[code].equals(PlayerPosition.fromCode(code).getLabel())){
+				throw new IOException(file + " codes position " + code + " as " + positionLabels[code]);
+			}
+		}
+		int indexCount = getCount(meta, file, 12, "sorted indexes");
+		if(indexCount != (sections - INDEXES) / 2){
+			throw corrupt(file, indexCount + " sorted indexes in " + (sections - INDEXES) / 2 + " pairs of sections");
+		}
+		int[][] indexShapes = new int[indexCount][];
+		for(int i = 0; i < indexCount; i++){
+			indexShapes[i] = new int[]{meta.getInt(), meta.getInt(), meta.getInt()};
+			int type = indexShapes[i][0];
+			int stat = indexShapes[i][1];
+			if(type != RosterStore.SKATER && type != RosterStore.GOALIE || stat < 0 || stat >= RosterStore.ALL_STATS || indexShapes[i][2] < 0 || indexShapes[i][2] > rows){
+				throw corrupt(file, "sorted index " + i + " is for type " + type + " and stat " + stat + " with " + indexShapes[i][2] + " rows");
+			}
+			checkLength(file, INDEXES + 2 * i, lengths, indexShapes[i][2] * 4L);
+			checkLength(file, INDEXES + 2 * i + 1, lengths, indexShapes[i][2] * 4L);
+		}
+		//the sections whose lengths follow from the row and birthplace counts
+		checkLength(file, NAME_OFFSETS, lengths, rows * 4L);
+		for(int column : new int[]{POSITIONS, TYPES, STAT_COUNTS}){
+			checkLength(file, column, lengths, rows);
+		}
+		checkLength(file, BIRTHPLACES, lengths, rows * 4L);
+		for(int stat = 0; stat < RosterStore.MAX_STATS; stat++){
+			checkLength(file, STATS + stat, lengths, rows * 4L);
+		}
+		checkLength(file, BIRTHPLACE_STARTS, lengths, (dictionaryValues[0].length + 1) * 4L);
+		checkLength(file, BIRTHPLACE_ROWS, lengths, rows * 4L);
+		if(lengths[NAMES] < rows * 4L){
+			throw corrupt(file, "the names of " + rows + " rows do not fit in " + lengths[NAMES] + " bytes");
+		}
+		//the columns
+		String[] lastNames = null;
+		ByteBuffer nameBytes = null;
+		IntBuffer nameOffsets = null;
+		if(mapped){
+			nameBytes = section(file, offsets[NAMES], lengths[NAMES], true);
+			nameOffsets = section(file, offsets[NAME_OFFSETS], lengths[NAME_OFFSETS], true).asIntBuffer();
+		}
+		else{
+			ByteBuffer names = section(file, offsets[NAMES], lengths[NAMES], false);
+			lastNames = new String[rows];
+			for(int row = 0; row < rows; row++){
+				lastNames[row] = getString(names);
+			}
+			if(names.hasRemaining()){
+				throw corrupt(file, names.remaining() + " bytes follow the last name");
+			}
+		}
+		ByteBuffer positionCodes = section(file, offsets[POSITIONS], rows, mapped);
+		ByteBuffer types = section(file, offsets[TYPES], rows, mapped);
+		ByteBuffer statCounts = section(file, offsets[STAT_COUNTS], rows, mapped);
+		IntBuffer birthplaceCodes = getInts(file, offsets[BIRTHPLACES], rows, mapped);
+		IntBuffer[] statColumns = new IntBuffer[RosterStore.MAX_STATS];
+		for(int stat = 0; stat < RosterStore.MAX_STATS; stat++){
+			statColumns[stat] = getInts(file, offsets[STATS + stat], rows, mapped);
+		}
+		int[] typeCounts = null;
+		if(verifyOnLoad){
+			typeCounts = checkRows(file, rows, positionCodes, birthplaceCodes, types, statCounts, dictionaryCounts);
+			if(mapped){
+				checkNames(file, rows, nameBytes, nameOffsets);
+			}
+		}
+		RosterStore store = mapped
+			? new RosterStore(nameBytes, nameOffsets, positionCodes, birthplaceCodes, types, statCounts, statColumns, dictionaryValues[0], dictionaryCounts[0], dictionaryCounts[1])
+			: new RosterStore(lastNames, positionCodes, birthplaceCodes, types, statCounts, statColumns, dictionaryValues[0], dictionaryCounts[0], dictionaryCounts[1]);
+		store.setLabel(label);
+		//the sorted indexes
+		for(int i = 0; i < indexCount; i++){
+			int size = indexShapes[i][2];
+			SortedStatIndex sorted = new SortedStatIndex(indexShapes[i][0], indexShapes[i][1], getInts(file, offsets[INDEXES + 2 * i], size, mapped), getInts(file, offsets[INDEXES + 2 * i + 1], size, mapped));
+			if(verifyOnLoad){
+				checkIndex(file, store, sorted, size, typeCounts[sorted.getType()]);
+			}
+			store.restoreSortedIndex(sorted);
+		}
+		//the birthplace row lists and the position and shoots bitmaps
+		IntBuffer birthplaceStarts = getInts(file, offsets[BIRTHPLACE_STARTS], dictionaryValues[0].length + 1, mapped);
+		IntBuffer birthplaceRows = getInts(file, offsets[BIRTHPLACE_ROWS], rows, mapped);
+		if(birthplaceStarts.get(0) != 0 || birthplaceStarts.get(dictionaryValues[0].length) != rows){
+			throw corrupt(file, "the birthplace row lists do not hold " + rows + " rows");
+		}
+		if(verifyOnLoad){
+			checkBirthplaceRows(file, rows, birthplaceStarts, birthplaceRows, birthplaceCodes, dictionaryCounts[0]);
+		}
+		ByteBuffer bitmapSection = section(file, offsets[BITMAPS], lengths[BITMAPS], false);
+		BitSet[][] bitmapSets = new BitSet[2][];
+		for(int set = 0; set < bitmapSets.length; set++){
+			bitmapSets[set] = new BitSet[getCount(bitmapSection, file, 4, "bitmaps")];
+			for(int i = 0; i < bitmapSets[set].length; i++){
+				long[] words = new long[getCount(bitmapSection, file, 8, "bitmap words")];
+				bitmapSection.asLongBuffer().get(words);
+				bitmapSection.position(bitmapSection.position() + words.length * 8);
+				bitmapSets[set][i] = BitSet.valueOf(words);
+				if(bitmapSets[set][i].length() > rows || verifyOnLoad && set == 0 && i < dictionaryCounts[1].length && bitmapSets[set][i].cardinality() != dictionaryCounts[1][i]){
+					throw corrupt(file, "bitmap " + i + " of set " + set + " does not match the rows");
+				}
+			}
+		}
+		store.restoreBitmapIndex(new RosterBitmapIndex(store, birthplaceStarts, birthplaceRows, bitmapSets[0], bitmapSets[1]));
+		return store;
+	}
+	
+	private static void checkLength(Path file, int section, long[] lengths, long expected) throws IOException{
+		if(lengths[section] != expected){
+			throw corrupt(file, "section " + section + " has " + lengths[section] + " bytes; expected " + expected);
+		}
+	}
+	
+	//reads a count of values that each take at least bytesEach bytes, so a corrupt count fails here rather than allocating
+	private static int getCount(ByteBuffer in, Path file, int bytesEach, String what) throws IOException{
+		int count = in.getInt();
+		if(count < 0 || (long)count * bytesEach > in.remaining()){
+			throw corrupt(file, count + " " + what + " do not fit in the " + in.remaining() + " bytes left");
+		}
+		return count;
+	}
+	
+	//checks every row's codes against the dictionaries and position types, and the dictionary counts against the rows,
+	//returning the number of rows of each type
+	private static int[] checkRows(Path file, int rows, ByteBuffer positionCodes, IntBuffer birthplaceCodes, ByteBuffer types, ByteBuffer statCounts, int[][] dictionaryCounts) throws IOException{
+		int[] birthplaces = new int[dictionaryCounts[0].length];
+		int[] positions = new int[dictionaryCounts[1].length];
+		int[] typeCounts = new int[2];
+		for(int row = 0; row < rows; row++){
+			int birthplace = birthplaceCodes.get(row);
+			int position = positionCodes.get(row);
+			if(birthplace < 0 || birthplace >= birthplaces.length || position < 0 || position >= positions.length){
+				throw corrupt(file, "row " + row + " has birthplace code " + birthplace + " and position code " + position);
+			}
+			boolean goalie = PlayerPosition.fromCode(position).isGoalie();
+			if(types.get(row) != (goalie ? RosterStore.GOALIE : RosterStore.SKATER) || statCounts.get(row) != (goalie ? RosterStore.GOALIE_STATS : RosterStore.MAX_STATS)){
+				throw corrupt(file, "row " + row + " has type " + types.get(row) + " and " + statCounts.get(row) + " stats for position " + PlayerPosition.fromCode(position).getLabel());
+			}
+			birthplaces[birthplace]++;
+			positions[position]++;
+			typeCounts[types.get(row)]++;
+		}
+		if(!Arrays.equals(birthplaces, dictionaryCounts[0]) || !Arrays.equals(positions, dictionaryCounts[1])){
+			throw corrupt(file, "the dictionary counts do not match the rows");
+		}
+		return typeCounts;
+	}
+	
+	//checks that each mapped name starts where the one before it ends and that the last one ends the section
+	private static void checkNames(Path file, int rows, ByteBuffer nameBytes, IntBuffer nameOffsets) throws IOException{
+		long end = 0;
+		for(int row = 0; row < rows; row++){
+			if(nameOffsets.get(row) != end || end + 4 > nameBytes.limit()){
+				throw corrupt(file, "the name of row " + row + " is not at offset " + end);
+			}
+			end += 4 + Math.max(nameBytes.getInt((int)end), 0);
+		}
+		if(end != nameBytes.limit()){
+			throw corrupt(file, "the names end at " + end + " of " + nameBytes.limit() + " bytes");
+		}
+	}
+	
+	//checks that a sorted index holds each row of its type once, in ascending key order (keys of raw stats equal to the column)
+	private static void checkIndex(Path file, RosterStore store, SortedStatIndex sorted, int size, int rowsOfType) throws IOException{
+		int type = sorted.getType();
+		int stat = sorted.getStat();
+		IntBuffer rows = sorted.getRows();
+		IntBuffer keys = sorted.getKeys();
+		BitSet seen = new BitSet(store.size());
+		for(int i = 0; i < size; i++){
+			int row = rows.get(i);
+			if(row < 0 || row >= store.size() || store.getType(row) != type || seen.get(row)
+				|| i > 0 && keys.get(i) < keys.get(i - 1) || stat < RosterStore.MAX_STATS && keys.get(i) != store.getRawColumn(stat).get(row)){
+				throw corrupt(file, "entry " + i + " of the sorted index of stat " + stat + " does not match the rows");
+			}
+			seen.set(row);
+		}
+		if(size != rowsOfType){
+			throw corrupt(file, "the sorted index of stat " + stat + " has " + size + " of the " + rowsOfType + " rows of its type");
+		}
+	}
+	
+	//checks that each birthplace's row list holds its players in ascending row order (with the counts checked, every row once)
+	private static void checkBirthplaceRows(Path file, int rows, IntBuffer starts, IntBuffer birthplaceRows, IntBuffer birthplaceCodes, int[] counts) throws IOException{
+		for(int code = 0; code < counts.length; code++){
+			int from = starts.get(code);
+			int to = starts.get(code + 1);
+			if(from < 0 || to > rows || to - from != counts[code]){
+				throw corrupt(file, "the row list of birthplace " + code + " runs from " + from + " to " + to);
+			}
+			for(int i = from; i < to; i++){
+				int row = birthplaceRows.get(i);
+				if(row < 0 || row >= rows || birthplaceCodes.get(row) != code || i > from && row <= birthplaceRows.get(i - 1)){
+					throw corrupt(file, "entry " + i + " of the birthplace row lists does not match the rows");
+				}
+			}
+		}
+	}
+	
+	private static IOException corrupt(Path file, String problem){
+		return new IOException("corrupt snapshot " + file + ": " + problem);
+	}
+	
+	//writing goes through one direct buffer that is flushed to the channel whenever the next value does not fit
+	private void ensure(int bytes) throws IOException{
+		if(buffer.remaining() < bytes){
+			flush();
+		}
+	}
+	
+	private void flush() throws IOException{
+		buffer.flip();
+		while(buffer.hasRemaining()){
+			written += channel.write(buffer);
+		}
+		buffer.clear();
+	}
+	
+	//offset in the file of the next value written
+	private long position(){
+		return written + buffer.position();
+	}
+	
+	private void putInt(int value) throws IOException{
+		ensure(4);
+		buffer.putInt(value);
+	}
+	
+	private void putLong(long value) throws IOException{
+		ensure(8);
+		buffer.putLong(value);
+	}
+	
+	private void putString(String value) throws IOException{
+		if(value == null){
+			putInt(-1);
+			return;
+		}
+		byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+		putInt(encoded.length);
+		putBytes(ByteBuffer.wrap(encoded), encoded.length);
+	}
+	
+	private void putBytes(ByteBuffer values, int count) throws IOException{
+		for(int from = 0; from < count; ){
+			ensure(1);
+			int length = Math.min(count - from, buffer.remaining());
+			buffer.put(buffer.position(), values, from, length);
+			buffer.position(buffer.position() + length);
+			from += length;
+		}
+	}
+	
+	private void putInts(IntBuffer values, int count) throws IOException{
+		for(int from = 0; from < count; ){
+			ensure(4);
+			int length = Math.min(count - from, buffer.remaining() / 4);
+			buffer.asIntBuffer().put(0, values, from, length);
+			buffer.position(buffer.position() + length * 4);
+			from += length;
+		}
+	}
+	
+	private static String getString(ByteBuffer in){
+		int length = in.getInt();
+		if(length < 0){
+			return null;
+		}
+		if(length > in.remaining()){
+			throw new BufferUnderflowException(); //a corrupt length, reported by open before a huge array is allocated
+		}
+		byte[] encoded = new byte[length];
+		in.get(encoded);
+		return new String(encoded, StandardCharsets.UTF_8);
+	}
+	
+	//a little-endian heap copy of a section, or a read-only mapping of it
+	private ByteBuffer section(Path file, long offset, long length, boolean mapped) throws IOException{
+		if(mapped){
+			if(length > Integer.MAX_VALUE){
+				throw new IOException(file + " has a section of " + length + " bytes, larger than one mapping (2 GB)");
+			}
+			return channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		if(length > Integer.MAX_VALUE - 8){
+			throw new IOException(file + " has a section of " + length + " bytes, too large to read onto the heap; load it with --off-heap");
+		}
+		return readBytes(offset, (int)length);
+	}
+	
+	private ByteBuffer readBytes(long offset, int length) throws IOException{
+		ByteBuffer values = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		while(values.hasRemaining()){
+			if(channel.read(values, offset + values.position()) < 0){
+				throw new BufferUnderflowException();
+			}
+		}
+		return values.flip();
+	}
+	
+	//a heap copy of count ints read through the direct buffer in chunks, or a mapping of them
+	private IntBuffer getInts(Path file, long offset, int count, boolean mapped) throws IOException{
+		if(mapped){
+			return section(file, offset, count * 4L, true).asIntBuffer();
+		}
+		int[] values = new int[count];
+		for(int from = 0; from < count; ){
+			int length = Math.min(count - from, BUFFER_SIZE / 4);
+			buffer.clear().limit(length * 4);
+			while(buffer.hasRemaining()){
+				if(channel.read(buffer, offset + from * 4L + buffer.position()) < 0){
+					throw new BufferUnderflowException();
+				}
+			}
+			buffer.flip().asIntBuffer().get(values, from, length);
+			from += length;
+		}
+		return IntBuffer.wrap(values);
+	}
+}
+
+///////////////////////////////////////////////////////////////////////////////////////////////////
+class GameIngestor{
+	//fields
+	private static final int GOALS = 0, ASSISTS = 1, POINTS = 2, PLUS_MINUS = 3;
+	private static final int SHOTS_AGAINST = 0, GOALS_AGAINST = 1, SAVES = 2;
+	private static final int AMBIGUOUS = -1;
+	private final RosterStore store;
+	private final HashMap<String, Integer> rowsByName = new HashMap<String, Integer>();
+	private int namedRows;
+	private long games;
+	
+	/**
+	* constructor that switches the store to incremental indexes, so every game applied costs O(log n) per built index
+	* @param RosterStore store whose players receive game results
+	*/
+	public GameIngestor(RosterStore store){
+		this.store = store;
+		store.setIncremental();
+	}
+	
+	/**
+	* method that adds one game of a skater to the season totals, keeping points equal to goals plus assists
+	* @param int row number of the skater
+	* @param int goals in the game
+	* @param int assists in the game
+	* @param int +/- in the game
+	*/
+	public synchronized void applySkaterGame(int row, int goals, int assists, int plusMinus){
+		long start = RosterMetrics.start();
+		if(store.isGoalie(row)){
+			throw new IllegalArgumentException(store.getLastName(row) + " is a goalie");
+		}
+		if(goals < 0 || assists < 0){
+			throw new IllegalArgumentException("goals and assists in a game cannot be negative");
+		}
+		store.setStat(row, GOALS, store.getStat(row, GOALS) + goals);
+		store.setStat(row, ASSISTS, store.getStat(row, ASSISTS) + assists);
+		store.setStat(row, POINTS, store.getStat(row, GOALS) + store.getStat(row, ASSISTS));
+		store.setStat(row, PLUS_MINUS, store.getStat(row, PLUS_MINUS) + plusMinus);
+		games++;
+		RosterMetrics.record(RosterMetrics.GAME, start, 1, 0);
+	}
+	
+	/**
+	* method that adds one game of a goalie to the season totals, keeping goals against equal to shots against minus saves
+	* @param int row number of the goalie
+	* @param int shots against in the game
+	* @param int saves in the game
+	*/
+	public synchronized void applyGoalieGame(int row, int shotsAgainst, int saves){
+		long start = RosterMetrics.start();
+		if(!store.isGoalie(row)){
+			throw new IllegalArgumentException(store.getLastName(row) + " is not a goalie");
+		}
+		if(saves < 0 || saves > shotsAgainst){
+			throw new IllegalArgumentException("saves must be between 0 and the shots against");
+		}
+		store.setStat(row, SHOTS_AGAINST, store.getStat(row, SHOTS_AGAINST) + shotsAgainst);
+		store.setStat(row, SAVES, store.getStat(row, SAVES) + saves);
+		store.setStat(row, GOALS_AGAINST, store.getStat(row, SHOTS_AGAINST) - store.getStat(row, SAVES));
+		games++;
+		RosterMetrics.record(RosterMetrics.GAME, start, 1, 0);
+	}
+	
+	/**
+	* method that finds the row of a player by last name (names are hashed on first use, and rows added since are hashed on the next call)
+	* @param String last name of the player
+	* @return int row number of the player
+	*/
+	public synchronized int findRow(String lastName){
+		Integer row = lookup(lastName);
+		if(row == null){
+			throw new IllegalArgumentException("no player named " + lastName);
+		}
+		if(row == AMBIGUOUS){
+			throw new IllegalArgumentException("more than one player named " + lastName);
+		}
+		return row;
+	}
+	
+	/**
+	* method that tells whether the store has at least one player with a last name
+	* @param String last name of the player
+	* @return boolean true if findRow would find the player or report the name as ambiguous
+	*/
+	public synchronized boolean hasPlayer(String lastName){
+		return lookup(lastName) != null;
+	}
+	
+	private Integer lookup(String lastName){
+		for(; namedRows < store.size(); namedRows++){
+			rowsByName.merge(store.getLastName(namedRows).toLowerCase(Locale.ROOT), namedRows, (row, next) -> AMBIGUOUS);
+		}
+		return rowsByName.get(lastName.toLowerCase(Locale.ROOT));
+	}
+	
+	//getters
+	public RosterStore getStore(){
+		return store;	
+	}
+	
+	public long getGames(){
+		return games;	
+	}
+}
+
+///////////////////////////////////////////////////////////////////////////////////////////////////
+class RosterSnapshot{
+	//fields
+	private final RosterStore store;
+	private final HockeyPlayer hp;
+	private int[] goalieRows;
+	private int[] skaterRows;
+	private List<HockeyPlayer> justG;
+	private List<HockeyPlayer> justSk;
+	private long version = -1;
+	
+	//constructors
+	/**
+	* constructor that wraps a loaded store; rows added or stats changed later (e.g., by a GameIngestor) are seen on the next call
+	* @param RosterStore players of the team roster
+	*/
+	public RosterSnapshot(RosterStore store){
+		this(new HockeyPlayer(store));
+	}
+	
+	/**
+	* constructor that wraps the roster of a HockeyPlayer; rows added or stats changed in its store later are seen on the next call
+	* @param HockeyPlayer holder of the team roster and its rosterStore
+	*/
+	public RosterSnapshot(HockeyPlayer hp){
+		this.hp = hp;
+		this.store = hp.getRosterStore();
+	}
+	
+	//clears the derived views once the store has changed since they were computed
+	private void checkVersion(){
+		if(version != store.getVersion()){
+			version = store.getVersion();
+			goalieRows = null;
+			skaterRows = null;
+			justG = null;
+			justSk = null;
+		}
+	}
+	
+	//getters (derived views are computed on first use, then shared until the store changes)
+	public RosterStore getStore(){
+		return store;	
+	}
+	
+	public HockeyPlayer getHP(){
+		return hp;	
+	}
+	
+	/**
+	* method that returns the goalie rows of the store in row order
+	* @return int[] shared row numbers (do not modify)
+	*/
+	public synchronized int[] getGoalieRows(){
+		checkVersion();
+		if(goalieRows == null){
+			goalieRows = store.getRowsOfType(RosterStore.GOALIE);
+		}
+		return goalieRows;
+	}
+	
+	/**
+	* method that returns the skater rows of the store in row order
+	* @return int[] shared row numbers (do not modify)
+	*/
+	public synchronized int[] getSkaterRows(){
+		checkVersion();
+		if(skaterRows == null){
+			skaterRows = store.getRowsOfType(RosterStore.SKATER);
+		}
+		return skaterRows;
+	}
+	
+	public synchronized List<HockeyPlayer> getJustG(){
+		checkVersion();
+		if(justG == null){
+			justG = playersOf(getGoalieRows());
+		}
+		return justG;
+	}
+	
+	public synchronized List<HockeyPlayer> getJustSk(){
+		checkVersion();
+		if(justSk == null){
+			justSk = playersOf(getSkaterRows());
+		}
+		return justSk;
+	}
+	
+	private List<HockeyPlayer> playersOf(int[] rows){
+		ArrayList<HockeyPlayer> players = new ArrayList<HockeyPlayer>(rows.length);
+		for(int row : rows){
+			players.add(hp.getRoster().get(row));
+		}
+		return Collections.unmodifiableList(players);
+	}
+	
+	/**
+	* method that returns the distinct birthplaces of the roster in alphabetical order
+	* @return String[] a copy the caller may modify
+	*/
+	public String[] getSortedBirthplaces(){
+		return store.getBirthplaces().getSortedValues();
+	}
+	
+	/**
+	* method that returns the birthplace codes of the roster, ordered like getSortedBirthplaces
+	* @return int[] a copy the caller may modify
+	*/
+	public int[] getSortedBirthplaceCodes(){
+		return store.getBirthplaces().getSortedCodes().clone();
+	}
+	
+	/**
+	* method that returns how many players were born in a country
+	* @param String birthplace (country)
+	* @return int number of players, 0 for a birthplace not on the roster
+	*/
+	public int getBirthplaceCount(String birthplace){
+		return store.getBirthplaces().getCount(store.getBirthplaces().codeOf(birthplace));
+	}
+	
+	public StatRangeIndex getSortedIndex(int type, int stat){
+		return store.getSortedIndex(type, stat);	
+	}
+	
+	public RosterBitmapIndex getBitmapIndex(){
+		return store.getBitmapIndex();	
+	}
+}
+
+///////////////////////////////////////////////////////////////////////////////////////////////////
+class RosterPartition{
+	//fields
+	private final String team;
+	private final String season;
+	private final RosterSnapshot snapshot;
+	
+	/**
+	* constructor that labels a store with its team and season and wraps it in its own snapshot
+	* @param String team name (e.g., Capitals)
+	* @param String season (e.g., 2017-2018)
+	* @param RosterStore players of that team in that season
+	*/
+	public RosterPartition(String team, String season, RosterStore store){
+		this.team = team;
+		this.season = season;
+		store.setLabel(getLabel());
+		snapshot = new RosterSnapshot(store);
+	}
+	
+	//getters
+	public String getTeam(){
+		return team;	
+	}
+	
+	public String getSeason(){
+		return season;	
+	}
+	
+	public String getLabel(){
+		return team + " " + season;	
+	}
+	
+	public RosterSnapshot getSnapshot(){
+		return snapshot;	
+	}
+	
+	public RosterStore getStore(){
+		return snapshot.getStore();	
+	}
+}
+
+///////////////////////////////////////////////////////////////////////////////////////////////////
+class PartitionedRoster{
+	//fields
+	private static final Pattern FILE_NAME = Pattern.compile("(.+)-(\\d{4}-\\d{4})\\.(csv|ihd)", Pattern.CASE_INSENSITIVE);
+	private final TreeMap<String, RosterPartition> partitions = new TreeMap<String, RosterPartition>();
+	
+	/**
+	* method that adds (or replaces) the roster of one team in one season
+	* @param String team name
+	* @param String season
+	* @param RosterStore players of that team in that season
+	* @return RosterPartition the new partition
+	*/
+	public synchronized RosterPartition add(String team, String season, RosterStore store){
+		RosterPartition partition = new RosterPartition(team, season, store);
+		partitions.put(key(team, season), partition);
+		return partition;
+	}
+	
+	/**
+	* method that loads every roster file named <team>-<season>.csv (e.g., capitals-2017-2018.csv) in a directory,
+	* one file per fork-join task; a <team>-<season>.ihd snapshot file is read instead of the CSV file of the same name
+	* @param Path directory of roster CSV files
+	* @return PartitionedRoster one partition per file, in team then season order
+	*/
+	public static PartitionedRoster load(Path directory) throws IOException{
+		ArrayList<Path> files = new ArrayList<Path>();
+		try(DirectoryStream<Path> listing = Files.newDirectoryStream(directory, "*.{csv,ihd}")){
+			for(Path file : listing){
+				String name = file.getFileName().toString();
+				if(FILE_NAME.matcher(name).matches() && !(name.toLowerCase(Locale.ROOT).endsWith(".csv") && Files.exists(directory.resolve(name.substring(0, name.length() - 4) + RosterSnapshotFile.EXTENSION)))){
+					files.add(file);
+				}
+			}
+		}
+		if(files.isEmpty()){
+			throw new IOException("No <team>-<season>.csv or .ihd roster files in " + directory);
+		}
+		PartitionedRoster league = new PartitionedRoster();
+		ArrayList<Callable<RosterPartition>> tasks = new ArrayList<Callable<RosterPartition>>();
+		for(Path file : files){
+			Matcher name = FILE_NAME.matcher(file.getFileName().toString());
+			name.matches();
+			String team = Character.toUpperCase(name.group(1).charAt(0)) + name.group(1).substring(1);
+			tasks.add(() -> league.add(team, name.group(2), RosterSnapshotFile.loadRoster(file)));
+		}
+		for(Future<RosterPartition> loaded : ForkJoinPool.commonPool().invokeAll(tasks)){
+			try{
+				loaded.get();
+			}
+			catch(InterruptedException | ExecutionException e){
+				throw new IOException("Exception loading league roster: " + e.getCause(), e.getCause());
+			}
+		}
+		return league;
+	}
+	
+	/**
+	* method that returns the partitions of a team and season, either of which may be * for all
+	* @param String team name or *
+	* @param String season or *
+	* @return List<RosterPartition> matching partitions in team then season order
+	*/
+	public synchronized List<RosterPartition> select(String team, String season){
+		ArrayList<RosterPartition> selected = new ArrayList<RosterPartition>();
+		for(RosterPartition partition : partitions.values()){
+			if((team.equals("*") || partition.getTeam().equalsIgnoreCase(team)) && (season.equals("*") || partition.getSeason().equals(season))){
+				selected.add(partition);
+			}
+		}
+		return selected;
+	}
+	
+	public synchronized List<RosterPartition> getPartitions(){
+		return new ArrayList<RosterPartition>(partitions.values());	
+	}
+	
+	/**
+	* method that runs the same work on every partition (or snapshot of one), one fork-join task per partition
+	* @param List<P> partitions to run on
+	* @param Function<P, T> work for one partition
+	* @return List<T> results in the order of the partitions
+	*/
+	public static <P, T> List<T> fanOut(List<P> partitions, Function<? super P, T> work){
+		ArrayList<Callable<T>> tasks = new ArrayList<Callable<T>>(partitions.size());
+		for(P partition : partitions){
+			tasks.add(() -> work.apply(partition));
+		}
+		ArrayList<T> results = new ArrayList<T>(partitions.size());
+		for(Future<T> result : ForkJoinPool.commonPool().invokeAll(tasks)){
+			try{
+				results.add(result.get());
+			}
+			catch(InterruptedException | ExecutionException e){
+				throw new IllegalStateException("Exception in fanOut method: " + e.getCause(), e.getCause());
+			}
+		}
+		return results;
+	}
+	
+	/**
+	* method that merges per-partition row lists that are each ordered by one stat into one list in the same order,
+	* ties going to the earlier partition, then the earlier position in its list
+	* @param List<RosterPartition> partitions the lists came from
+	* @param List<int[]> rows of each partition in stat order
+	* @param int stats array index value the lists are ordered by
+	* @param boolean true if the lists are in descending stat order
+	* @param int most rows to return
+	* @return long[] merged rows packed as partition index (high 32 bits) and row (read them with RosterSort.key and RosterSort.row)
+	*/
+	public static long[] mergeByStat(List<RosterPartition> partitions, List<int[]> rows, int stat, boolean descending, int limit){
+		IntBuffer[] columns = new IntBuffer[partitions.size()];
+		int[] cursor = new int[partitions.size()];
+		PriorityQueue<Integer> next = new PriorityQueue<Integer>(Math.max(partitions.size(), 1), (left, right) -> {
+			int byStat = Integer.compare(columns[left].get(rows.get(left)[cursor[left]]), columns[right].get(rows.get(right)[cursor[right]]));
+			return byStat != 0 ? (descending ? -byStat : byStat) : Integer.compare(left, right);
+		});
+		long total = 0;
+		for(int i = 0; i < columns.length; i++){
+			columns[i] = partitions.get(i).getStore().getStatColumn(stat);
+			total += rows.get(i).length;
+			if(rows.get(i).length > 0){
+				next.add(i);
+			}
+		}
+		long[] merged = new long[(int)Math.min(total, Math.max(limit, 0))];
+		for(int count = 0; count < merged.length; count++){
+			int partition = next.poll();
+			merged[count] = RosterSort.pack(partition, rows.get(partition)[cursor[partition]++]);
+			if(cursor[partition] < rows.get(partition).length){
+				next.add(partition);
+			}
+		}
+		return merged;
+	}
+	
+	private static String key(String team, String season){
+		return team.toLowerCase(Locale.ROOT) + '\u0000' + season;	
+	}
+}
+
+///////////////////////////////////////////////////////////////////////////////////////////////////
+class RosterRow{
+	//fields
+	private final RosterStore store;
+	private int row;
+	
+	/**
+	* constructor that points the view at one row of a store (the view can be moved with setRow)
+	* @param RosterStore store that holds the player
+	* @param int row number of the player
+	*/
+	public RosterRow(RosterStore store, int row){
+		this.store = store;
+		this.row = row;
+	}
+	
+	//setter
+	public void setRow(int row){
+		this.row = row;	
+	}
+	
+	//getters
+	public RosterStore getStore(){
+		return store;	
+	}
+	
+	public int getRow(){
+		return row;	
+	}
+	
+	public String getLastName(){
+		return store.getLastName(row);	
+	}
+	
+	public String getPosition(){
+		return store.getPosition(row);	
+	}
+	
+	public String getBirthplace(){
+		return store.getBirthplace(row);	
+	}
+	
+	public int[] getStats(){
+		return store.getStats(row);	
+	}
+	
+	public int getStat(int stat){
+		return store.getStat(row, stat);	
+	}
+	
+	public int getType(){
+		return store.getType(row);	
+	}
+}
+
+///////////////////////////////////////////////////////////////////////////////////////////////////
+/**
+* writes result rows into one reusable buffer that is copied to the stream in large chunks;
+* subclasses decide the layout (tab-separated text, CSV, or one JSON object per result set)
+*/
+abstract class ResultRenderer{
+	//fields
+	protected static final String NEWLINE = System.lineSeparator();
+	private static final int FLUSH_AT = 1 << 16;
+	private final PrintStream out;
+	protected final StringBuilder buffer = new StringBuilder(FLUSH_AT + 1024);
+	
+	/**
+	* constructor that initializes the stream the buffer is flushed to
+	* @param PrintStream destination of the results
+	*/
+	public ResultRenderer(PrintStream out){
+		this.out = out;
+	}
+	
+	/**
+	* method that returns the renderer for a format name
+	* @param String text, csv, or json
+	* @param PrintStream destination of the results
+	* @return ResultRenderer renderer of that format
+	*/
+	public static ResultRenderer forFormat(String format, PrintStream out){
+		switch(format.toLowerCase(Locale.ROOT)){
+			case "text": return new TextRenderer(out);
+			case "csv": return new CsvRenderer(out);
+			case "json": return new JsonRenderer(out);
+			default: throw new IllegalArgumentException("Unknown result format " + format + "; expected text, csv, or json");
+		}
+	}
+	
+	/**
+	* method that writes a human-readable line (headings, totals); only the text layout shows it
+	* @param String line to write
+	*/
+	public void note(String line){
+	}
+	
+	/**
+	* method that starts a result set
+	* @param String description of the results (e.g., 'players born in  Canada')
+	*/
+	public abstract void beginResults(String description);
+	
+	/**
+	* method that writes a player with their stats
+	* @param RosterStore store that holds the player
+	* @param int row number of the player
+	* @param int RosterStore.SKATER or RosterStore.GOALIE
+	*/
+	public abstract void statRow(RosterStore store, int row, int type);
+	
+	/**
+	* method that writes a player of a query result (the text layout shows only the name)
+	* @param RosterStore store that holds the player
+	* @param int row number of the player
+	*/
+	public void nameRow(RosterStore store, int row){
+		statRow(store, row, store.getType(row));
+	}
+	
+	/**
+	* method that starts a result set of group aggregates (ended by endResults with the number of groups)
+	* @param String description of the results (e.g., 'SKATERS Points by Birthplace')
+	*/
+	public void beginGroups(String description){
+		beginResults(description);
+	}
+	
+	/**
+	* method that writes the aggregates of one group
+	* @param String name of the group (e.g., a birthplace)
+	* @param RosterAggregator.Group count, sum, mean, min, median, 90th percentile and max of the group
+	*/
+	public abstract void groupRow(String group, RosterAggregator.Group stats);
+	
+	/**
+	* method that ends the current result set
+	* @param int number of players in the result set
+	*/
+	public abstract void endResults(int count);
+	
+	/**
+	* method that copies the buffer to the stream once it holds a large chunk
+	*/
+	protected void rowDone(){
+		if(buffer.length() >= FLUSH_AT){
+			flush();
+		}
+	}
+	
+	/**
+	* method that copies everything buffered so far to the stream
+	*/
+	public void flush(){
+		if(buffer.length() > 0){
+			out.append(buffer);
+			buffer.setLength(0);
+		}
+		out.flush();
+	}
+	
+	protected static String typeName(int type){
+		return type == RosterStore.GOALIE ? "goalie" : "skater";	
+	}
+	
+	protected static String mean(RosterAggregator.Group stats){
+		return String.format(Locale.ROOT, "%.2f", stats.getMean());	
+	}
+}
+
+///////////////////////////////////////////////////////////////////////////////////////////////////
+class TextRenderer extends ResultRenderer{
+	//fields
+	private static final String[] SKATER_LABELS = {"Position: ", "\tGoals: ", "\tAssists: ", "\tPoints: ", "\t+/-: "};
+	private static final String[] GOALIE_LABELS = {"Position: ", "\tShots Against: ", "\tGoals Against: ", "\tSaves: "};
+	
+	public TextRenderer(PrintStream out){
+		super(out);
+	}
+	
+	@Override
+	public void note(String line){
+		buffer.append(line).append(NEWLINE);
+		rowDone();
+	}
+	
+	@Override
+	public void beginResults(String description){
+	}
+	
+	//the console layout used by Output.printStats
+	@Override
+	public void statRow(RosterStore store, int row, int type){
+		String[] labels = type == RosterStore.SKATER ? SKATER_LABELS : GOALIE_LABELS;
+		buffer.append(labels[0]).append(store.getPosition(row));
+		for(int stat = 1; stat < labels.length; stat++){
+			buffer.append(labels[stat]).append(store.getStat(row, stat - 1));
+		}
+		buffer.append("\t\tName: ").append(store.getLastName(row));
+		if(store.getLabel() != null){
+			buffer.append("\tTeam: ").append(store.getLabel());
+		}
+		buffer.append(NEWLINE);
+		rowDone();
+	}
+	
+	@Override
+	public void nameRow(RosterStore store, int row){
+		buffer.append('\t').append(store.getLastName(row));
+		if(store.getLabel() != null){
+			buffer.append(" (").append(store.getLabel()).append(')');
+		}
+		buffer.append(NEWLINE);
+		rowDone();
+	}
+	
+	@Override
+	public void groupRow(String group, RosterAggregator.Group stats){
+		buffer.append(group).append("\tCount: ").append(stats.getCount()).append("\tSum: ").append(stats.getSum()).append("\tMean: ").append(mean(stats));
+		buffer.append("\tMin: ").append(stats.getMin()).append("\tMedian: ").append(stats.getPercentile(50)).append("\tP90: ").append(stats.getPercentile(90)).append("\tMax: ").append(stats.getMax()).append(NEWLINE);
+		rowDone();
+	}
+	
+	@Override
+	public void endResults(int count){
+	}
+}
+
+///////////////////////////////////////////////////////////////////////////////////////////////////
+class CsvRenderer extends ResultRenderer{
+	//fields
+	private static final String HEADER = "Result,Last Name,Position,Birthplace,Type,Stat 1,Stat 2,Stat 3,Stat 4,Stat 5";
+	private static final String LEAGUE_HEADER = HEADER + ",Team";
+	private static final String GROUP_HEADER = "Result,Group,Count,Sum,Mean,Min,Median,P90,Max";
+	private boolean headerWritten;
+	private boolean groupHeaderWritten;
+	private String description = "";
+	
+	public CsvRenderer(PrintStream out){
+		super(out);
+	}
+	
+	@Override
+	public void beginResults(String description){
+		this.description = description.trim();
+		if(!headerWritten){
+			buffer.append(Output.getScope() == null ? HEADER : LEAGUE_HEADER).append(NEWLINE);
+			headerWritten = true;
+		}
+	}
+	
+	//one line per player, shaped like a roster file line with the result description in front
+	@Override
+	public void statRow(RosterStore store, int row, int type){
+		field(description);
+		buffer.append(',');
+		field(store.getLastName(row));
+		buffer.append(',');
+		field(store.getPosition(row));
+		buffer.append(',');
+		field(store.getBirthplace(row));
+		buffer.append(',').append(typeName(type));
+		for(int stat = 0; stat < store.getStatCount(row); stat++){
+			buffer.append(',').append(store.getStat(row, stat));
+		}
+		if(store.getLabel() != null){ //league rows end with their team and season, after empty stats up to Stat 5
+			for(int stat = store.getStatCount(row); stat < RosterStore.MAX_STATS; stat++){
+				buffer.append(',');
+			}
+			buffer.append(',');
+			field(store.getLabel());
+		}
+		buffer.append(NEWLINE);
+		rowDone();
+	}
+	
+	//group results have their own columns, so they get their own header line
+	@Override
+	public void beginGroups(String description){
+		this.description = description.trim();
+		if(!groupHeaderWritten){
+			buffer.append(GROUP_HEADER).append(NEWLINE);
+			groupHeaderWritten = true;
+		}
+	}
+	
+	@Override
+	public void groupRow(String group, RosterAggregator.Group stats){
+		field(description);
+		buffer.append(',');
+		field(group);
+		buffer.append(',').append(stats.getCount()).append(',').append(stats.getSum()).append(',').append(mean(stats));
+		buffer.append(',').append(stats.getMin()).append(',').append(stats.getPercentile(50)).append(',').append(stats.getPercentile(90)).append(',').append(stats.getMax()).append(NEWLINE);
+		rowDone();
+	}
+	
+	@Override
+	public void endResults(int count){
+	}
+	
+	//quotes a field that holds a comma, quote, or line break
+	private void field(String value){
+		boolean quote = false;
+		for(int i = 0; i < value.length() && !quote; i++){
+			char c = value.charAt(i);
+			quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+		if(!quote){
+			buffer.append(value);
+			return;
+		}
+		buffer.append('"');
+		for(int i = 0; i < value.length(); i++){
+			char c = value.charAt(i);
+			if(c == '"'){
+				buffer.append('"');
+			}
+			buffer.append(c);
+		}
+		buffer.append('"');
+	}
+}
+
+///////////////////////////////////////////////////////////////////////////////////////////////////
+class JsonRenderer extends ResultRenderer{
+	//fields
+	private static final String[] SKATER_KEYS = {"goals", "assists", "points", "plusMinus", "shoots"};
+	private static final String[] GOALIE_KEYS = {"shotsAgainst", "goalsAgainst", "saves"};
+	private static final String[] SHOOTS = {"R", "L"};
+	private boolean firstRow;
+	
+	public JsonRenderer(PrintStream out){
+		super(out);
+	}
+	
+	//each result set is one JSON object on its own line
+	@Override
+	public void beginResults(String description){
+		buffer.append("{\"result\":");
+		string(description.trim());
+		buffer.append(",\"players\":[");
+		firstRow = true;
+	}
+	
+	@Override
+	public void statRow(RosterStore store, int row, int type){
+		if(!firstRow){
+			buffer.append(',');
+		}
+		firstRow = false;
+		buffer.append("{\"lastName\":");
+		string(store.getLastName(row));
+		buffer.append(",\"position\":");
+		string(store.getPosition(row));
+		buffer.append(",\"birthplace\":");
+		string(store.getBirthplace(row));
+		buffer.append(",\"type\":\"").append(typeName(type)).append('"');
+		if(store.getLabel() != null){
+			buffer.append(",\"team\":");
+			string(store.getLabel());
+		}
+		String[] keys = type == RosterStore.SKATER ? SKATER_KEYS : GOALIE_KEYS;
+		for(int stat = 0; stat < keys.length && stat < store.getStatCount(row); stat++){
+			buffer.append(",\"").append(keys[stat]).append("\":");
+			int value = store.getStat(row, stat);
+			if(keys[stat].equals("shoots") && (value == 0 || value == 1)){
+				buffer.append('"').append(SHOOTS[value]).append('"');
+			}
+			else{
+				buffer.append(value);
+			}
+		}
+		buffer.append('}');
+		rowDone();
+	}
+	
+	@Override
+	public void beginGroups(String description){
+		buffer.append("{\"result\":");
+		string(description.trim());
+		buffer.append(",\"groups\":[");
+		firstRow = true;
+	}
+	
+	@Override
+	public void groupRow(String group, RosterAggregator.Group stats){
+		if(!firstRow){
+			buffer.append(',');
+		}
+		firstRow = false;
+		buffer.append("{\"group\":");
+		string(group);
+		buffer.append(",\"count\":").append(stats.getCount()).append(",\"sum\":").append(stats.getSum()).append(",\"mean\":").append(mean(stats));
+		buffer.append(",\"min\":").append(stats.getMin()).append(",\"median\":").append(stats.getPercentile(50)).append(",\"p90\":").append(stats.getPercentile(90)).append(",\"max\":").append(stats.getMax()).append('}');
+		rowDone();
+	}
+	
+	@Override
+	public void endResults(int count){
+		buffer.append("],\"total\":").append(count).append('}').append(NEWLINE);
+		rowDone();
+	}
+	
+	private void string(String value){
+		buffer.append('"');
+		for(int i = 0; i < value.length(); i++){
+			char c = value.charAt(i);
+			if(c == '"' || c == '\\'){
+				buffer.append('\\').append(c);
+			}
+			else if(c < 0x20){
+				buffer.append(String.format("\\u%04x", (int)c));
+			}
+			else{
+				buffer.append(c);
+			}
+		}
+		buffer.append('"');
+	}
+}
+
+///////////////////////////////////////////////////////////////////////////////////////////////////
+///////////////////////////////////////////////////////////////////////////////////////////////////
+/**
+* call counts, errors, rows scanned, rows emitted and a latency histogram per operation type, kept in counters that are
+* allocated once, so recording stays cheap enough to leave on; read as a text report or over JMX (IlluminateHockeyData:type=Operation)
+*/
+class RosterMetrics{
+	//fields
+	public static final int DISPLAY = 0, SORT = 1, LEADERS = 2, QUERY = 3, GROUP = 4, ROSTER_SORT = 5, GAME = 6, COMMAND = 7, SIMILAR = 8;
+	public static final String[] OPERATIONS = {"display", "sort", "leaders", "query", "group", "rosterSort", "game", "batchCommand", "similar"};
+	private static final int SUB_BUCKET_BITS = 3; //8 buckets per power of two, so a bucket is within 12.5% of its latencies
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+	private static final Operation[] operations = new Operation[OPERATIONS.length];
+	private static volatile boolean enabled = true;
+	private static boolean registered;
+	
+	static{
+		for(int i = 0; i < operations.length; i++){
+			operations[i] = new Operation();
+		}
+	}
+	
+	//no instances; the metrics are static so any Output can record into them
+	private RosterMetrics(){
+	}
+	
+	/**
+	* method that starts timing an operation
+	* @return long start time to pass to record, or 0 while recording is off
+	*/
+	public static long start(){
+		return enabled ? System.nanoTime() : 0;	
+	}
+	
+	/**
+	* method that records one finished call of an operation (no allocation)
+	* @param int operation type (e.g., SORT)
+	* @param long value returned by start
+	* @param long rows read to answer the call
+	* @param long rows written to the results
+	*/
+	public static void record(int operation, long start, long scanned, long emitted){
+		if(start != 0){
+			operations[operation].record(System.nanoTime() - start, scanned, emitted, false);
+		}
+	}
+	
+	/**
+	* method that records one call of an operation that failed
+	* @param int operation type
+	* @param long value returned by start
+	*/
+	public static void recordError(int operation, long start){
+		if(start != 0){
+			operations[operation].record(System.nanoTime() - start, 0, 0, true);
+		}
+	}
+	
+	public static void setEnabled(boolean on){
+		enabled = on;	
+	}
+	
+	public static void reset(){
+		for(Operation operation : operations){
+			operation.reset();
+		}
+	}
+	
+	public static OperationMXBean getOperation(int operation){
+		return operations[operation];	
+	}
+	
+	/**
+	* method that registers one MXBean per operation type with the platform MBean server (once)
+	*/
+	public static synchronized void registerMBeans(){
+		if(registered){
+			return;
+		}
+		try{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			for(int i = 0; i < operations.length; i++){
+				server.registerMBean(operations[i], new ObjectName("IlluminateHockeyData:type=Operation,name=" + OPERATIONS[i]));
+			}
+			server.registerMBean(RosterResultCache.getShared().getMXBean(), new ObjectName("IlluminateHockeyData:type=ResultCache"));
+			registered = true;
+		}
+		catch(JMException e){
+			System.err.println("Exception in registerMBeans method: " + e);
+		}
+	}
+	
+	/**
+	* method that lays out every operation that has been called as a table
+	* @return String report with one line per operation (latencies in microseconds)
+	*/
+	public static String report(){
+		StringBuilder report = new StringBuilder();
+		report.append(String.format(Locale.ROOT, "%-13s %9s %7s %13s %13s %11s %11s %11s %11s%n", "Operation", "Calls", "Errors", "Rows scanned", "Rows emitted", "Mean us", "P50 us", "P99 us", "Max us"));
+		for(int i = 0; i < operations.length; i++){
+			Operation operation = operations[i];
+			if(operation.getCalls() > 0){
+				report.append(String.format(Locale.ROOT, "%-13s %9d %7d %13d %13d %11.1f %11.1f %11.1f %11.1f%n", OPERATIONS[i], operation.getCalls(), operation.getErrors(), operation.getRowsScanned(), operation.getRowsEmitted(),
+					operation.getMeanMicros(), operation.getP50Micros(), operation.getP99Micros(), operation.getMaxMicros()));
+			}
+		}
+		RosterResultCache cache = RosterResultCache.getShared();
+		if(cache.getHits() + cache.getMisses() > 0){
+			report.append(cache.report());
+		}
+		return report.toString();
+	}
+	
+	//log-linear bucket of a latency: exact below SUB_BUCKETS ns, then SUB_BUCKETS buckets per power of two
+	private static int bucket(long nanos){
+		if(nanos < SUB_BUCKETS){
+			return (int)Math.max(nanos, 0);
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		int sub = (int)(nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) | sub;
+	}
+	
+	private static long upperBound(int bucket){
+		if(bucket < SUB_BUCKETS){
+			return bucket;
+		}
+		int exponent = (bucket >>> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+		long sub = bucket & (SUB_BUCKETS - 1);
+		return ((SUB_BUCKETS | sub) + 1 << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+	
+	/**
+	* the JMX view of one operation type
+	*/
+	public interface OperationMXBean{
+		long getCalls();
+		
+		long getErrors();
+		
+		long getRowsScanned();
+		
+		long getRowsEmitted();
+		
+		double getMeanMicros();
+		
+		double getP50Micros();
+		
+		double getP99Micros();
+		
+		double getMaxMicros();
+		
+		void reset();
+	}
+	
+	private static final class Operation implements OperationMXBean{
+		private final LongAdder calls = new LongAdder();
+		private final LongAdder errors = new LongAdder();
+		private final LongAdder rowsScanned = new LongAdder();
+		private final LongAdder rowsEmitted = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final AtomicLong maxNanos = new AtomicLong();
+		private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+		
+		private void record(long nanos, long scanned, long emitted, boolean error){
+			calls.increment();
+			if(error){
+				errors.increment();
+			}
+			rowsScanned.add(scanned);
+			rowsEmitted.add(emitted);
+			totalNanos.add(nanos);
+			maxNanos.accumulateAndGet(nanos, Math::max);
+			histogram.incrementAndGet(bucket(nanos));
+		}
+		
+		//upper bound of the bucket that holds the given fraction of the calls
+		private double percentileMicros(double fraction){
+			long total = 0;
+			for(int i = 0; i < BUCKETS; i++){
+				total += histogram.get(i);
+			}
+			long rank = Math.max((long)Math.ceil(fraction * total), 1);
+			long seen = 0;
+			for(int i = 0; i < BUCKETS; i++){
+				seen += histogram.get(i);
+				if(seen >= rank){
+					return Math.min(upperBound(i), maxNanos.get()) / 1000.0;
+				}
+			}
+			return 0;
+		}
+		
+		@Override
+		public long getCalls(){
+			return calls.sum();	
+		}
+		
+		@Override
+		public long getErrors(){
+			return errors.sum();	
+		}
+		
+		@Override
+		public long getRowsScanned(){
+			return rowsScanned.sum();	
+		}
+		
+		@Override
+		public long getRowsEmitted(){
+			return rowsEmitted.sum();	
+		}
+		
+		@Override
+		public double getMeanMicros(){
+			long count = calls.sum();
+			return count == 0 ? 0 : totalNanos.sum() / 1000.0 / count;
+		}
+		
+		@Override
+		public double getP50Micros(){
+			return percentileMicros(0.5);	
+		}
+		
+		@Override
+		public double getP99Micros(){
+			return percentileMicros(0.99);	
+		}
+		
+		@Override
+		public double getMaxMicros(){
+			return maxNanos.get() / 1000.0;	
+		}
+		
+		@Override
+		public void reset(){
+			calls.reset();
+			errors.reset();
+			rowsScanned.reset();
+			rowsEmitted.reset();
+			totalNanos.reset();
+			maxNanos.set(0);
+			for(int i = 0; i < BUCKETS; i++){
+				histogram.set(i, 0);
+			}
+		}
+	}
+}
+
+///////////////////////////////////////////////////////////////////////////////////////////////////
+/**
+* bounded LRU cache of Sort and Query results (the matching rows, not the rendered text), shared by every Output;
+* each entry remembers the stores it was computed from and their versions, so a roster change makes it a miss
+*/
+class RosterResultCache{
+	//fields
+	public static final int DEFAULT_CAPACITY = 256;
+	private static final RosterResultCache shared = new RosterResultCache(DEFAULT_CAPACITY);
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true){ //access order, eldest = least recently used
+		private static final long serialVersionUID = 1L;
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest){
+			if(size() > capacity){
+				evictions.incrementAndGet();
+				return true;
+			}
+			return false;
+		}
+	};
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+	private int capacity;
+	
+	/**
+	* constructor that bounds the number of results kept
+	* @param int most results to keep (0 turns caching off)
+	*/
+	public RosterResultCache(int capacity){
+		setCapacity(capacity);
+	}
+	
+	/**
+	* the counters published over JMX (see getMXBean)
+	*/
+	public interface ResultCacheMXBean{
+		long getHits();
+		long getMisses();
+		long getEvictions();
+		long getInvalidations();
+		int getSize();
+		int getCapacity();
+	}
+	
+	public static RosterResultCache getShared(){
+		return shared;	
+	}
+	
+	/**
+	* method that returns the cached result of a request, or computes and caches it if it is missing or any of its stores changed since
+	* (compute runs outside the lock, so two threads that miss at once may both compute; the results are equal)
+	* @param String request (e.g., menu choice, option, and bounds)
+	* @param List<RosterStore> stores the result is read from
+	* @param Supplier<T> computes the result; it must not be modified afterwards
+	* @return T result
+	*/
+	@SuppressWarnings("unchecked")
+	public <T> T get(String request, List<RosterStore> stores, Supplier<T> compute){
+		StringBuilder key = new StringBuilder(request);
+		for(RosterStore store : stores){
+			key.append('@').append(Integer.toHexString(System.identityHashCode(store)));
+		}
+		String cacheKey = key.toString();
+		synchronized(this){
+			Entry entry = entries.get(cacheKey);
+			if(entry != null){
+				if(entry.isCurrent(stores)){
+					hits.incrementAndGet();
+					return (T)entry.value;
+				}
+				entries.remove(cacheKey);
+				invalidations.incrementAndGet();
+			}
+		}
+		misses.incrementAndGet();
+		Entry entry = new Entry(stores);
+		T value = compute.get();
+		entry.value = value;
+		synchronized(this){
+			if(capacity > 0){
+				entries.put(cacheKey, entry);
+			}
+		}
+		return value;
+	}
+	
+	//one cached result with the versions of the stores it was read from (taken before it was computed)
+	private static final class Entry{
+		private final RosterStore[] stores;
+		private final long[] versions;
+		private Object value;
+		
+		private Entry(List<RosterStore> stores){
+			this.stores = stores.toArray(new RosterStore[0]);
+			versions = new long[this.stores.length];
+			for(int i = 0; i < versions.length; i++){
+				versions[i] = this.stores[i].getVersion();
+			}
+		}
+		
+		private boolean isCurrent(List<RosterStore> current){
+			if(current.size() != stores.length){
+				return false;
+			}
+			for(int i = 0; i < stores.length; i++){
+				if(current.get(i) != stores[i] || stores[i].getVersion() != versions[i]){
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+	
+	/**
+	* method that changes how many results are kept, evicting the least recently used ones beyond it
+	* @param int most results to keep (0 turns caching off)
+	*/
+	public synchronized void setCapacity(int capacity){
+		if(capacity < 0){
+			throw new IllegalArgumentException("Cache capacity cannot be negative: " + capacity);
+		}
+		this.capacity = capacity;
+		for(Iterator<String> eldest = entries.keySet().iterator(); entries.size() > capacity && eldest.hasNext(); ){
+			eldest.next();
+			eldest.remove();
+			evictions.incrementAndGet();
+		}
+	}
+	
+	/**
+	* method that returns a view of the counters for the platform MBean server
+	* @return ResultCacheMXBean live counters of this cache
+	*/
+	public ResultCacheMXBean getMXBean(){
+		RosterResultCache cache = this;
+		return new ResultCacheMXBean(){
+			@Override
+			public long getHits(){
+				return cache.getHits();
+			}
+			
+			@Override
+			public long getMisses(){
+				return cache.getMisses();
+			}
+			
+			@Override
+			public long getEvictions(){
+				return cache.getEvictions();
+			}
+			
+			@Override
+			public long getInvalidations(){
+				return cache.getInvalidations();
+			}
+			
+			@Override
+			public int getSize(){
+				return cache.getSize();
+			}
+			
+			@Override
+			public int getCapacity(){
+				return cache.getCapacity();
+			}
+		};
+
+	}
+	
+	public synchronized void clear(){
+		entries.clear();	
+	}
+	
+	//getters
+	public synchronized int getSize(){
+		return entries.size();	
+	}
+	
+	public synchronized int getCapacity(){
+		return capacity;	
+	}
+	
+	public long getHits(){
+		return hits.get();	
+	}
+	
+	public long getMisses(){
+		return misses.get();	
+	}
+	
+	public long getEvictions(){
+		return evictions.get();	
+	}
+	
+	public long getInvalidations(){
+		return invalidations.get();	
+	}
+	
+	/**
+	* method that summarizes the cache in one line for the metrics report
+	* @return String hits, misses, hit rate, evictions, invalidations and size
+	*/
+	public String report(){
+		long hitCount = getHits();
+		long lookups = hitCount + getMisses();
+		return String.format(Locale.ROOT, "Result cache: %d hits, %d misses (%.1f%% hit rate), %d evicted, %d invalidated by roster changes, %d of %d entries%n",
+			hitCount, getMisses(), lookups == 0 ? 0.0 : 100.0 * hitCount / lookups, getEvictions(), getInvalidations(), getSize(), getCapacity());
+	}
+}
+
+///////////////////////////////////////////////////////////////////////////////////////////////////
+class Output{
+	//fields
+	private static RosterSnapshot snapshot;
+	private static PartitionedRoster league;
+	private static List<RosterPartition> scope;
+	private static BufferedReader sharedReader;
+	private static ResultRenderer consoleRenderer;
+	private BufferedReader reader;
+	private PrintStream out = System.out;
+	private ResultRenderer renderer;
+	private HockeyPlayer hp; 
+	private List<HockeyPlayer> justG; 
+	private List<HockeyPlayer> justSk; 
+	private final String[] MAIN_MENU_OPTS = {"Display Roster", "Sort Stats", "Query Players"};
+	private final String MAIN_TITLE = "WELCOME TO 2017-2018 WASHINGTON CAPITALS' (SOME) REGULAR SEASON STATS WIZARD!";
+	
+	//constuctor
+	/**
+	* no-argument constructor that initializes the reader and hp fields (both shared by every Output, so nothing is reloaded per menu)
+	*/
+	public Output(){
+		setReader();
+		setHP();
+	}
+	
+	//setters
+	public void setReader(){
+		synchronized(Output.class){
+			if(sharedReader == null){
+				sharedReader = new BufferedReader(new InputStreamReader(System.in));
+			}
+			reader = sharedReader;
+		}
+	}
+	
+	public void setHP(){
+		hp = getSnapshot().getHP();
+	}
+	
+	/**
+	* method that redirects results (not menus or prompts) to another stream
+	* @param PrintStream stream that results are written to
+	*/
+	public void setOut(PrintStream out){
+		this.out = out;	
+		renderer = null;
+	}
+	
+	/**
+	* method that chooses how results are laid out (the renderer may be shared so several Outputs write in order)
+	* @param ResultRenderer layout and buffer for results
+	*/
+	public void setRenderer(ResultRenderer renderer){
+		this.renderer = renderer;	
+	}
+	
+	/**
+	* method that replaces the roster snapshot shared by every Output created afterwards
+	* @param RosterSnapshot roster to share
+	*/
+	public static synchronized void setSnapshot(RosterSnapshot rosterSnapshot){
+		snapshot = rosterSnapshot;
+	}
+	
+	/**
+	* method that returns the shared roster snapshot, building the built-in team roster on first use
+	* @return RosterSnapshot roster shared by every Output
+	*/
+	public static synchronized RosterSnapshot getSnapshot(){
+		if(snapshot == null){
+			snapshot = new RosterSnapshot(new HockeyPlayer());
+		}
+		return snapshot;
+	}
+	
+	/**
+	* method that loads the roster from a CSV or snapshot file once, for every Output created afterwards to use instead of the built-in roster
+	* @param Path CSV file read by RosterLoader, or snapshot file read by RosterSnapshotFile
+	*/
+	public static void loadRoster(Path rosterFile) throws IOException{
+		setSnapshot(new RosterSnapshot(RosterSnapshotFile.loadRoster(rosterFile)));
+	}
+	
+	/**
+	* method that loads a directory of <team>-<season>.csv roster files as a league and selects every partition,
+	* so Display, Sort and Query fan out across all of them
+	* @param Path directory read by PartitionedRoster.load
+	*/
+	public static void loadLeague(Path directory) throws IOException{
+		PartitionedRoster loaded = PartitionedRoster.load(directory);
+		synchronized(Output.class){
+			league = loaded;
+			scope = loaded.getPartitions();
+			snapshot = scope.get(0).getSnapshot(); //single-roster paths (e.g., menus of stat names) read the first partition
+		}
+	}
+	
+	/**
+	* method that selects the partitions of the league that Display, Sort and Query run on
+	* @param String team name or * for every team
+	* @param String season or * for every season
+	*/
+	public static synchronized void setScope(String team, String season){
+		if(league == null){
+			throw new IllegalStateException("no league is loaded");
+		}
+		List<RosterPartition> selected = league.select(team, season);
+		if(selected.isEmpty()){
+			throw new IllegalArgumentException("no roster for team " + team + " in season " + season);
+		}
+		scope = selected;
+	}
+	
+	/**
+	* method that returns the league partitions selected for Display, Sort and Query
+	* @return List<RosterPartition> selected partitions, or null when a single roster is loaded
+	*/
+	public static synchronized List<RosterPartition> getScope(){
+		return scope;	
+	}
+	
+	/**
+	* method that returns the stores a query reads: one per selected partition, or the single roster's store
+	* @param List<RosterPartition> selected partitions from getScope(), or null
+	* @return List<RosterStore> stores in partition order
+	*/
+	protected static List<RosterStore> getStores(List<RosterPartition> partitions){
+		if(partitions == null){
+			return Collections.singletonList(getSnapshot().getStore());
+		}
+		List<RosterStore> stores = new ArrayList<RosterStore>();
+		for(RosterPartition partition : partitions){
+			stores.add(partition.getStore());
+		}
+		return stores;
+	}
+	
+	/**
+	* method that returns the name results are titled with: CAPS for the single roster, else the team and season or LEAGUE
+	* @return String team name for result headings
+	*/
+	public static String getTeamName(){
+		List<RosterPartition> selected = getScope();
+		if(selected == null){
+			return "CAPS";
+		}
+		return selected.size() == 1 ? selected.get(0).getLabel().toUpperCase(Locale.ROOT) : "LEAGUE";
+	}
+	
+	//names the selected partitions in titles (e.g., 'CAPITALS 2017-2018, RANGERS 2017-2018')
+	protected static String scopeTitle(){
+		StringJoiner title = new StringJoiner(", ");
+		for(RosterPartition partition : getScope()){
+			title.add(partition.getLabel().toUpperCase(Locale.ROOT));
+		}
+		return title.toString();
+	}
+	
+	public void setHP(HockeyPlayer hp){
+		this.hp = hp;	
+	}
+	
+	public void setJustG(){
+		justG = getSnapshot().getJustG();
+	}
+	
+	public void setJustSk(){
+		justSk = getSnapshot().getJustSk();
+	}
+
+	//getters
+	public BufferedReader getReader(){
+		return reader;
+	}	
+	
+	public PrintStream getOut(){
+		return out;	
+	}
+	
+	//every Output writing to the console shares one buffer, so results stay in order and any menu flushes them all
+	private static synchronized ResultRenderer getConsoleRenderer(){
+		if(consoleRenderer == null){
+			consoleRenderer = new TextRenderer(System.out);
+		}
+		return consoleRenderer;
+	}
+	
+	/**
+	* method that returns the renderer of results, the console text layout unless another was set
+	* @return ResultRenderer layout and buffer for results
+	*/
+	public ResultRenderer getRenderer(){
+		if(renderer == null){
+			renderer = out == System.out ? getConsoleRenderer() : new TextRenderer(out);
+		}
+		return renderer;	
+	}
+	
+	public HockeyPlayer getHP(){
+		return hp;	
+	}
+	
+	public List<HockeyPlayer> getJustG(){
+		if(justG == null){
+			setJustG();
+		}
+		return justG;	
+	}
+	
+	public List<HockeyPlayer> getJustSk(){
+		if(justSk == null){
+			setJustSk();
+		}
+		return justSk;	
+	}
+	
+	public String[] getMAIN_MENU_OPTS(){
+		return MAIN_MENU_OPTS;	
+	}
+	
+	public int userChoice(){
+		int userChoice = 0;
+		try{
+			System.out.print("Enter selection: ");
+			userChoice = Integer.parseInt(reader.readLine());	
+		}
+		catch(Exception e){
+			System.out.println("Exception in userChoice method: " + e + "\nTry again!");
+			userChoice();
+		}
+		return userChoice;
+	}
+	
+	public void mainTitle(){
+		getRenderer().flush();
+		System.out.println("\n**********************************************************************************");
+		System.out.println(getScope() == null ? MAIN_TITLE : "WELCOME TO THE " + scopeTitle() + " (SOME) REGULAR SEASON STATS WIZARD!");
+	}
+	
+	public void mainMenu(){
+		Output output = new Output();
+		output.mainTitle();
+		int choice = output.userOptions(MAIN_MENU_OPTS);
+		if(choice == 1){
+			Display display = new Display();
+			display.printRosterDetails();
+			mainMenu();
+		}
+		else if(choice == 2){
+			Sort sort = new Sort();
+			sort.userSortOptions();
+		}
+		else{
+			Query query = new Query();
+			query.userQueryOptions();
+			mainMenu();
+		}
+	}
+	
+	public void printStats(RosterRow player, int type){
+		getRenderer().statRow(player.getStore(), player.getRow(), type);
+	}
+	
+	//method to determine which option (from given options), user selects
+	public int userOptions(String... OPTIONS){
+		int userChc = 0;
+		getRenderer().flush();
+		System.out.println("\n**********************************************************************************");
+		System.out.println("\nSelect an option: ");
+		for(int i = 0; i < OPTIONS.length; i++){
+			System.out.println((i+1) + "). " + OPTIONS[i]);	
+		}
+		System.out.println("\n" + (OPTIONS.length + 1) + "). " + "Exit");
+		System.out.println("\n*********************************************");
+		userChc = userChoice();
+			if(userChc < (OPTIONS.length + 1)){
+				System.out.println("  You selected:  " + OPTIONS[userChc - 1]);
+				return userChc;
+			}
+			else if(userChc == (OPTIONS.length + 1)){
+				System.out.print("  You selected: EXIT");
+				System.exit(0);
+			}
+		return 1;
+	}
+	
+}
+
+///////////////////////////////////////////////////////////////////////////////////////////////////
+class Display extends Output{
+	//fields
+	private final String ROSTER_HEADER = "THE 2017-2018 REGULAR SEASON ROSTER AND SOME OF THEIR STATS:\n";
+	
+	//no-argument constructor
+	public Display(){
+	}
+	
+	//getter
+	public String getROSTER_HEADER(){
+		return getScope() == null ? ROSTER_HEADER : "THE " + scopeTitle() + " REGULAR SEASON " + (getScope().size() == 1 ? "ROSTER" : "ROSTERS") + " AND SOME OF THEIR STATS:\n";	
+	}
+	
+	//ouputs skaters (forward and defense) and goalies and some of their stats in a predetermined order
+	//(partition by partition when a league is loaded: there is nothing to compute, so there is nothing to fan out)
+	public void printRoster(){
+		long start = RosterMetrics.start();
+		List<RosterStore> stores = new ArrayList<RosterStore>();
+		if(getScope() == null){
+			stores.add(getSnapshot().getStore());
+		}
+		else{
+			for(RosterPartition partition : getScope()){
+				stores.add(partition.getStore());
+			}
+		}
+		getRenderer().beginResults("roster");
+		int total = 0;
+		for(RosterStore store : stores){
+			RosterRow player = new RosterRow(store, 0);
+			for(int row = 0; row < store.size(); row++){
+				player.setRow(row);
+				printStats(player, store.getType(row));
+			}
+			total += store.size();
+		}
+		getRenderer().endResults(total);
+		RosterMetrics.record(RosterMetrics.DISPLAY, start, total, total);
+	}
+	
+	//outputs all players and some of their stats in a predetermined order, then loads main menu of user options
+	public void printRosterDetails(){
+		getRenderer().note("*****************************************************************************");
+		getRenderer().note(getROSTER_HEADER());
+		Display display = new Display();
+		display.printRoster();
+		mainMenu();
+	}	
+}
+
+///////////////////////////////////////////////////////////////////////////////////////////////////
+class Sort extends Output{
+	//fields
+	private final String [] sortMainMenu = {"Goalie", "Skater", "Goalie Leaders", "Skater Leaders", "Composite Order", "Similar Players"};
+	private final String [] sortLeaderMenu = {"Top", "Bottom"};
+	private final String [] sortGoalieStats = getHP().getGOALIE_STATS();
+	private final String [] sortSkaterStats = getHP().getSKATER_STATS();
+	public static final int ANY_TYPE = -1;
+	
+	//constructors
+	/**
+	* no-argument constructor
+	*/
+	public Sort(){
+	}	
+
+	public int userMinMax(String stat, String minOrMax){
+		int userMinMax = 0;
+		getRenderer().flush();
+		try{
+			System.out.print("Enter " + minOrMax + " " + stat + " to include in sort (this number WILL be included): ");
+			userMinMax = Integer.parseInt(getReader().readLine());	
+		}
+		catch(Exception e){
+			System.out.println("Exception in userMinMax method: " + e + "\nTry again!");
+			userMinMax(stat, minOrMax);
+		}
+		return userMinMax;
+	}
+	
+	public String setBound(String boundType, String stat, int statMinMax){
+		return "As of " + LocalDate.now() + " " + stat + " " + boundType + " = " + statMinMax;	
+	}
+
+	/**
+	* method that outputs rows merged from one or more stores (see PartitionedRoster.mergeByStat)
+	* @param List<RosterStore> stores the rows came from (from getStores)
+	* @param long[] packed store index and row of each player, in output order
+	* @param int RosterStore.SKATER or RosterStore.GOALIE, or ANY_TYPE to lay out each player by their own type
+	*/
+	public void outputMerged(List<RosterStore> stores, long[] merged, int type){
+		RosterRow[] players = new RosterRow[stores.size()]; //one reusable row view per store
+		for(int i = 0; i < players.length; i++){
+			players[i] = new RosterRow(stores.get(i), 0);
+		}
+		for(long storeRow : merged){
+			RosterRow player = players[RosterSort.key(storeRow)];
+			player.setRow(RosterSort.row(storeRow));
+			printStats(player, type == ANY_TYPE ? player.getStore().getType(player.getRow()) : type);
+		}
+		getRenderer().endResults(merged.length);
+	}
+	
+	//packs the rows of the single roster as store 0, to share the merged output (and cache) with league results
+	private static long[] packSingle(int[] rows){
+		long[] packed = new long[rows.length];
+		for(int i = 0; i < rows.length; i++){
+			packed[i] = RosterSort.pack(0, rows[i]);
+		}
+		return packed;
+	}
+
+	public void outputPlayersSorted(int userChoice, String[] sortPlayerStats, int type, String position){
+		int stat = RosterStore.menuStat(type, userChoice - 1);
+		List<StatRangeIndex> sortedRosters = new ArrayList<StatRangeIndex>();
+		if(getScope() == null){
+			sortedRosters.add(getSnapshot().getSortedIndex(type, stat));
+		}
+		else{
+			sortedRosters.addAll(PartitionedRoster.fanOut(getScope(), partition -> partition.getSnapshot().getSortedIndex(type, stat)));
+		}
+		int rosterMin = Integer.MAX_VALUE;
+		int rosterMax = Integer.MIN_VALUE;
+		for(StatRangeIndex sortedRoster : sortedRosters){
+			if(sortedRoster.size() > 0){
+				rosterMin = Math.min(rosterMin, sortedRoster.getMin());
+				rosterMax = Math.max(rosterMax, sortedRoster.getMax());
+			}
+		}
+		if(rosterMin > rosterMax){
+			getRenderer().note("\nThere are no " + getTeamName() + " " + position + " to sort.");
+			return;
+		}
+		getRenderer().note(setBound("MIN", sortPlayerStats[userChoice-1], rosterMin));
+		getRenderer().note(setBound("MAX", sortPlayerStats[userChoice-1], rosterMax));
+		int userMin = userMinMax(sortPlayerStats[userChoice-1], "MIN");
+		int userMax = userMinMax(sortPlayerStats[userChoice-1], "MAX");
+		outputSortedRange(userChoice, sortPlayerStats, type, position, userMin, userMax);
+	}
+	
+	/**
+	* method that outputs the players of a position type whose stat lies within bounds, in ascending stat order
+	* @param int a number that corresponds to a player stats array index value that we are sorting
+	* @param String[] names of the position type's stats
+	* @param int RosterStore.SKATER or RosterStore.GOALIE
+	* @param String position type as shown in the results (e.g., SKATERS)
+	* @param int smallest stat value to include
+	* @param int largest stat value to include
+	*/
+	public void outputSortedRange(int userChoice, String[] sortPlayerStats, int type, String position, int userMin, int userMax){
+		long start = RosterMetrics.start();
+		String description = getTeamName() + " " + position + " with " + userMin + " <= " + sortPlayerStats[userChoice-1] + " <= " + userMax;
+		getRenderer().note("\n" + description + " are:");
+		getRenderer().beginResults(description);
+		int stat = RosterStore.menuStat(type, userChoice - 1);
+		List<RosterPartition> partitions = getScope();
+		List<RosterStore> stores = getStores(partitions);
+		long[] scanned = {0};
+		long[] matched = RosterResultCache.getShared().get("sort " + type + " " + stat + " " + userMin + " " + userMax, stores, () -> {
+			long[] merged;
+			if(partitions == null){
+				merged = packSingle(toArray(stores.get(0).getSortedIndex(type, stat).rows(userMin, userMax)));
+			}
+			else{
+				List<int[]> ranges = PartitionedRoster.fanOut(partitions, partition -> toArray(partition.getSnapshot().getSortedIndex(type, stat).rows(userMin, userMax)));
+				merged = PartitionedRoster.mergeByStat(partitions, ranges, stat, false, Integer.MAX_VALUE);
+			}
+			scanned[0] = merged.length; //an index range reads only the rows it outputs
+			return merged;
+		});
+		outputMerged(stores, matched, type);
+		RosterMetrics.record(RosterMetrics.SORT, start, scanned[0], matched.length);
+	}
+	
+	private static int[] toArray(PrimitiveIterator.OfInt rows){
+		int[] array = new int[16];
+		int count = 0;
+		while(rows.hasNext()){
+			if(count == array.length){
+				array = Arrays.copyOf(array, count * 2);
+			}
+			array[count++] = rows.nextInt();
+		}
+		return Arrays.copyOf(array, count);
+	}
+
+	/**
+	* method that outputs the k players of a position type with the highest or lowest stat, best first, without sorting the group
+	* @param int a number that corresponds to a player stats array index value that we are ranking by
+	* @param String[] names of the position type's stats
+	* @param int RosterStore.SKATER or RosterStore.GOALIE
+	* @param String position type as shown in the results (e.g., SKATERS)
+	* @param int number of players to list
+	* @param boolean true for the top (highest) values, false for the bottom (lowest)
+	*/
+	public void outputLeaders(int userChoice, String[] sortPlayerStats, int type, String position, int k, boolean top){
+		if(k < 0){
+			throw new IllegalArgumentException("number of players cannot be negative: " + k);
+		}
+		String description = getTeamName() + " " + position + " " + (top ? "top " : "bottom ") + k + " by " + sortPlayerStats[userChoice-1];
+		getRenderer().note("\n" + description + " are:");
+		getRenderer().beginResults(description);
+		long start = RosterMetrics.start();
+		int stat = RosterStore.menuStat(type, userChoice - 1);
+		List<RosterPartition> partitions = getScope();
+		List<RosterStore> stores = getStores(partitions);
+		long[] scanned = {0};
+		long[] matched = RosterResultCache.getShared().get((top ? "top " : "bottom ") + type + " " + stat + " " + k, stores, () -> {
+			List<RosterSnapshot> snapshots = new ArrayList<RosterSnapshot>();
+			if(partitions == null){
+				snapshots.add(getSnapshot());
+			}
+			else{
+				for(RosterPartition partition : partitions){
+					snapshots.add(partition.getSnapshot());
+				}
+			}
+			for(RosterSnapshot snapshot : snapshots){
+				scanned[0] += type == RosterStore.GOALIE ? snapshot.getGoalieRows().length : snapshot.getSkaterRows().length;
+			}
+			if(partitions == null){
+				RosterSnapshot snapshot = snapshots.get(0);
+				return packSingle(StatLeaders.leadersParallel(snapshot.getStore().getStatColumn(stat), type == RosterStore.GOALIE ? snapshot.getGoalieRows() : snapshot.getSkaterRows(), k, top));
+			}
+			List<int[]> leaders = PartitionedRoster.fanOut(snapshots, snapshot -> StatLeaders.leadersParallel(snapshot.getStore().getStatColumn(stat),
+				type == RosterStore.GOALIE ? snapshot.getGoalieRows() : snapshot.getSkaterRows(), k, top));
+			return PartitionedRoster.mergeByStat(partitions, leaders, stat, top, k);
+		});
+		outputMerged(stores, matched, type);
+		RosterMetrics.record(RosterMetrics.LEADERS, start, scanned[0], matched.length);
+	}
+	
+	/**
+	* method that outputs every player (goalies and skaters) in a composite order, e.g. points DESC, goals DESC, plusminus DESC, name,
+	* sorted on packed primitive keys (see RosterOrder) across every selected partition
+	* @param String order parsed by RosterOrder.parse
+	*/
+	public void outputOrder(String orderText){
+		RosterOrder order = RosterOrder.parse(orderText);
+		String description = getTeamName() + " players ordered by " + order;
+		getRenderer().note("\n" + description + " are:");
+		getRenderer().beginResults(description);
+		long start = RosterMetrics.start();
+		List<RosterStore> stores = getStores(getScope());
+		long[] scanned = {0};
+		long[] sorted = RosterResultCache.getShared().get("order " + order, stores, () -> {
+			for(RosterStore store : stores){
+				scanned[0] += store.size();
+			}
+			return order.sort(stores);
+		});
+		outputMerged(stores, sorted, ANY_TYPE);
+		RosterMetrics.record(RosterMetrics.SORT, start, scanned[0], sorted.length);
+	}
+	
+	/**
+	* method that reads a composite order, asking again until it parses
+	* @return String order accepted by RosterOrder.parse
+	*/
+	public String userOrder(){
+		getRenderer().flush();
+		try{
+			System.out.print("Enter an order (e.g., points DESC, goals DESC, plusminus DESC, name LIMIT 10): ");
+			String order = getReader().readLine();
+			if(order == null){
+				throw new EOFException("no more input");
+			}
+			RosterOrder.parse(order);
+			return order;
+		}
+		catch(IOException | IllegalArgumentException e){
+			System.out.println("Exception in userOrder method: " + e.getMessage() + "\nTry again!");
+			if(e instanceof EOFException){
+				System.exit(1);
+			}
+			return userOrder();
+		}
+	}
+	
+	/**
+	* method that outputs the k players whose stat lines (skaters: goals, assists, points, +/-; goalies: shots against, goals against,
+	* saves) are closest to a player's in standard deviations, nearest first, across every selected partition (see StatNeighborIndex)
+	* @param String last name, followed by the team and season when more than one selected partition has it (e.g., Kuznetsov Capitals 2017-2018)
+	* @param int number of players to list
+	*/
+	public void outputSimilar(String player, int k){
+		if(k < 0){
+			throw new IllegalArgumentException("number of players cannot be negative: " + k);
+		}
+		long start = RosterMetrics.start();
+		List<RosterStore> stores = getStores(getScope());
+		long reference = findPlayer(stores, player);
+		RosterStore store = stores.get(RosterSort.key(reference));
+		int row = RosterSort.row(reference);
+		int type = store.getType(row);
+		String description = getTeamName() + " " + (type == RosterStore.GOALIE ? "GOALIES " : "SKATERS ") + k + " most similar to " + store.getLastName(row)
+			+ (store.getLabel() == null ? "" : " (" + store.getLabel() + ")");
+		getRenderer().note("\n" + description + " are:");
+		getRenderer().beginResults(description);
+		long[] scanned = {0};
+		long[] similar = RosterResultCache.getShared().get("similar " + reference + " " + k, stores, () -> {
+			long[] nearest = StatNeighborIndex.nearest(stores, reference, k, false);
+			for(RosterStore searched : stores){
+				scanned[0] += searched.getNeighborIndex(type).size(); //the tree of every store was searched
+			}
+			return nearest;
+		});
+		outputMerged(stores, similar, type);
+		RosterMetrics.record(RosterMetrics.SIMILAR, start, scanned[0], similar.length);
+	}
+	
+	/**
+	* method that finds a player by last name (ignoring case)
+	* @param List<RosterStore> stores to look in (from getStores)
+	* @param String last name, optionally followed by a team, or a team and season, to pick between players of the same name
+	* @return long store index and row of the player, packed with RosterSort.pack
+	*/
+	public static long findPlayer(List<RosterStore> stores, String player){
+		String[] words = player.trim().split("\\s+", 2);
+		String label = words.length > 1 ? words[1].replaceAll("\\s+", " ").toLowerCase(Locale.ROOT) + " " : null;
+		long found = -1;
+		for(int i = 0; i < stores.size(); i++){
+			RosterStore store = stores.get(i);
+			if(label != null && (store.getLabel() == null || !(store.getLabel().toLowerCase(Locale.ROOT) + " ").startsWith(label))){
+				continue;
+			}
+			for(int row = 0; row < store.size(); row++){
+				if(store.getLastName(row).equalsIgnoreCase(words[0])){
+					if(found >= 0){
+						throw new IllegalArgumentException("more than one player named " + player + (stores.size() > 1 ? "; add their team and season" : ""));
+					}
+					found = RosterSort.pack(i, row);
+				}
+			}
+		}
+		if(found < 0){
+			throw new IllegalArgumentException("no player named " + player);
+		}
+		return found;
+	}
+	
+	/**
+	* method that reads the player to compare others to, asking again until one player matches
+	* @return String player accepted by findPlayer
+	*/
+	public String userSimilar(){
+		getRenderer().flush();
+		try{
+			System.out.print("Enter a last name (add the team and season in a league, e.g., Kuznetsov Capitals 2017-2018): ");
+			String player = getReader().readLine();
+			if(player == null){
+				throw new EOFException("no more input");
+			}
+			findPlayer(getStores(getScope()), player);
+			return player;
+		}
+		catch(IOException | IllegalArgumentException e){
+			System.out.println("Exception in userSimilar method: " + e.getMessage() + "\nTry again!");
+			if(e instanceof EOFException){
+				System.exit(1);
+			}
+			return userSimilar();
+		}
+	}
+	
+	public int userLeaderCount(){
+		int userCount = 0;
+		getRenderer().flush();
+		try{
+			System.out.print("Enter how many players to list: ");
+			userCount = Integer.parseInt(getReader().readLine());	
+			if(userCount < 0){
+				throw new IllegalArgumentException("number of players cannot be negative: " + userCount);
+			}
+		}
+		catch(Exception e){
+			System.out.println("Exception in userLeaderCount method: " + e + "\nTry again!");
+			userCount = userLeaderCount();
+		}
+		return userCount;
+	}
+
+	//getters
+	public String[] getSortGoalieStats(){
+		return sortGoalieStats;	
+	}
+	
+	public String[] getSortSkaterStats(){
+		return sortSkaterStats;	
+	}
+
+	//a method that outputs a menu to select type of sorted stats to display on screen
+	public void userSortOptions(){
+		int sortGoalieOrSkater = userOptions(sortMainMenu);
+		int userChoice = 0;
+		if(sortGoalieOrSkater == 1){ 
+			userChoice = userOptions(sortGoalieStats);
+			outputPlayersSorted(userChoice, sortGoalieStats, RosterStore.GOALIE, "GOALIES");
+		}
+		else if(sortGoalieOrSkater == 2){ 
+			userChoice = userOptions(sortSkaterStats);
+			outputPlayersSorted(userChoice, sortSkaterStats, RosterStore.SKATER, "SKATERS");
+		}
+		else if(sortGoalieOrSkater == 5){
+			outputOrder(userOrder());
+		}
+		else if(sortGoalieOrSkater == 6){
+			outputSimilar(userSimilar(), userLeaderCount());
+		}
+		else{
+			boolean goalie = sortGoalieOrSkater == 3;
+			String[] stats = goalie ? sortGoalieStats : sortSkaterStats;
+			userChoice = userOptions(stats);
+			boolean top = userOptions(sortLeaderMenu) == 1;
+			outputLeaders(userChoice, stats, goalie ? RosterStore.GOALIE : RosterStore.SKATER, goalie ? "GOALIES" : "SKATERS", userLeaderCount(), top);
+		}
+		mainMenu();
+	}
+	
+}
+
+///////////////////////////////////////////////////////////////////////////////////////////////////
+class Query extends Output{
+	//fields
+	private final String [] queryMainMenu = {"Birthplace", "Shoots", "Position", "Combined Filters", "Group Stats", "Filter Expression"};
+	private final String [] queryGoalieOrSkater = {"Goalie", "Skater"};
+	private final String [] queryCombine = {"Match ALL filters (AND)", "Match ANY filter (OR)"};
+	private final String [] queryAnyShoots = {"R", "L", "Any"};
+	private final String [] queryAnyPositions = {"Forward", "Forward, LW", "Forward, C", "Forward, RW", "Defense", "Goalie", "Any"};
+	private String [] queryBP;
+	private int [] queryBPCodes;
+	private final String [] queryShoots = {"R", "L"};
+	private final String [] queryPositions = {"Forward", "Defense", "Goalie"}; 
+	private final String [] queryForwardPos = {"Forward", "Forward, LW", "Forward, C", "Forward, RW"};
+	
+	/**
+	*no-argument constructor that initializes that queryBP field
+	*/
+	public Query(){
+		setQueryBP();
+	}
+	
+	//setter
+	public void setQueryBP(){
+		if(getScope() == null){
+			queryBP = getSnapshot().getSortedBirthplaces();
+			queryBPCodes = getSnapshot().getSortedBirthplaceCodes();
+			return;
+		}
+		TreeSet<String> birthplaces = new TreeSet<String>();
+		for(RosterPartition partition : getScope()){
+			birthplaces.addAll(Arrays.asList(partition.getSnapshot().getSortedBirthplaces()));
+		}
+		queryBP = birthplaces.toArray(new String[0]);
+		queryBPCodes = null; //codes differ per partition, so league queries match birthplaces by name
+	}
+	
+	//getters
+	public String[] getQueryMainMenu(){
+		return queryMainMenu;	
+	}
+	
+	public String[] getQueryBP(){
+		return queryBP;
+	}
+	
+	public int[] getQueryBPCodes(){
+		return queryBPCodes;
+	}
+	
+	public String[] getQueryShoots(){
+		return queryShoots;	
+	}
+	
+	public String[] getQueryPositions(){
+		return queryPositions;	
+	}
+	
+	public String[] getQueryForwardPos(){
 		return queryForwardPos;	
 	}
 	
 	/**
-	generalized method to display query results -- parameters tailor method to a specific value in the queryMainMenu final class var
-	*@param queryType -- depends on userChoice from querySubMenu selection
-	*@param message -- words specific to current query (e.g., insert 'born' when displaying birthplace results)
-	*@param choice -- depends on userChoice from queryMainMenu selection
-	*@param queryOpts -- these depend on the Query class array fields
+	* method that reads a filter expression, asking again until it parses
+	* @return String expression accepted by RosterFilter.parse
+	*/
+	public String userFilter(){
+		getRenderer().flush();
+		try{
+			System.out.print("Enter a filter (e.g., birthplace=Canada AND position~RW AND points BETWEEN 20 AND 50): ");
+			String expression = getReader().readLine();
+			if(expression == null){
+				throw new EOFException("no more input");
+			}
+			RosterFilter.parse(expression);
+			return expression;
+		}
+		catch(IOException | IllegalArgumentException e){
+			System.out.println("Exception in userFilter method: " + e.getMessage() + "\nTry again!");
+			if(e instanceof EOFException){
+				System.exit(1);
+			}
+			return userFilter();
+		}
+	}
+	
+	/**
+	generalized method to display query results -- parameters tailor method to a specific value in the queryMainMenu final class var
+	*@param queryType -- depends on userChoice from querySubMenu selection
+	*@param message -- words specific to current query (e.g., insert 'born' when displaying birthplace results)
+	*@param choice -- depends on userChoice from queryMainMenu selection
+	*@param queryOpts -- these depend on the Query class array fields
+	*/
+	public void outputQuery(int queryType, String message, int choice, String... queryOpts){
+		outputMatches(index -> {
+			switch(choice){
+				case 1: return index.birthplace(queryOpts[queryType]);
+				case 2: return index.shoots(queryType);
+				case 3: return index.position(queryOpts[queryType]);
+				default: return new BitSet();
+			}
+		}, message + " " + queryOpts[queryType]);
+	}
+	
+	/**
+	* method to display the players born in one of the queryBP birthplaces, looked up by code rather than by name
+	*@param queryType -- index into queryBP (and queryBPCodes) from the birthplace sub menu
+	*/
+	public void outputBirthplaceQuery(int queryType){
+		if(queryBPCodes == null){
+			outputQuery(queryType, "players born in ", 1, queryBP);
+			return;
+		}
+		outputMatches(index -> index.birthplace(queryBPCodes[queryType]), "players born in  " + queryBP[queryType]);
+	}
+	
+	/**
+	* method to display the players matched by a bitmap filter, run on every selected partition in parallel when a league is loaded
+	* (the matches are kept in the shared RosterResultCache under the description until the roster changes)
+	*@param filter -- builds the matching rows from a roster's bitmap index
+	*@param description -- words describing the query (e.g., 'players born in  Canada'), which must tell it apart from other filters
+	*/
+	public void outputMatches(Function<RosterBitmapIndex, BitSet> filter, String description){
+		outputStoreMatches(store -> filter.apply(store.getBitmapIndex()), description);
+	}
+	
+	/**
+	* method to display the players matching a filter expression (see RosterFilter), parsed once, compiled per roster into one
+	* fused predicate, and tested against every row in a single pass
+	*@param expression -- e.g., 'birthplace=Canada AND position~RW AND points BETWEEN 20 AND 50 AND shoots=L'
+	*/
+	public void outputFilter(String expression){
+		RosterFilter filter = RosterFilter.parse(expression);
+		outputStoreMatches(filter::evaluate, "players where " + filter);
+	}
+	
+	/**
+	* method to display the players matched by a filter of a whole store, run on every selected partition in parallel when a league is loaded
+	* (the matches are kept in the shared RosterResultCache under the description until the roster changes)
+	*@param filter -- builds the matching rows of a roster
+	*@param description -- words describing the query, which must tell it apart from other filters
+	*/
+	public void outputStoreMatches(Function<RosterStore, BitSet> filter, String description){
+		long start = RosterMetrics.start();
+		List<RosterPartition> partitions = getScope();
+		List<RosterStore> stores = getStores(partitions);
+		long[] scanned = {0};
+		List<BitSet> matches = RosterResultCache.getShared().get("query " + description, stores, () -> {
+			for(RosterStore store : stores){
+				scanned[0] += store.size(); //a bitmap query reads every row of every store
+			}
+			if(partitions == null){
+				return Collections.singletonList(filter.apply(stores.get(0)));
+			}
+			return PartitionedRoster.fanOut(partitions, partition -> filter.apply(partition.getStore()));
+		});
+		outputMatches(stores, matches, description, start, scanned[0]);
+	}
+	
+	/**
+	* method to display the players of a query result
+	*@param matches -- roster rows that satisfied the query
+	*@param description -- words describing the query (e.g., 'players born in  Canada')
+	*/
+	public void outputMatches(BitSet matches, String description){
+		outputMatches(Collections.singletonList(getSnapshot().getStore()), Collections.singletonList(matches), description, RosterMetrics.start(), getSnapshot().getStore().size());
+	}
+	
+	//lists the matches of each store in turn, with one total
+	private void outputMatches(List<RosterStore> stores, List<BitSet> matches, String description, long start, long scanned){
+		ResultRenderer renderer = getRenderer();
+		renderer.note("\n***********************************************************************");
+		renderer.note("RESULTS:\n" + description + " are:");	
+		renderer.beginResults(description);
+		int total = 0;
+		for(int i = 0; i < stores.size(); i++){
+			BitSet storeMatches = matches.get(i);
+			for(int row = storeMatches.nextSetBit(0); row >= 0; row = storeMatches.nextSetBit(row + 1)){
+				renderer.nameRow(stores.get(i), row);	
+			}
+			total += storeMatches.cardinality();
+		}
+		renderer.endResults(total);
+		RosterMetrics.record(RosterMetrics.QUERY, start, scanned, total);
+		renderer.note("\nTOTAL: " + total + " " + description + ".");
+		renderer.note("***********************************************************************");
+	}
+	
+	/**
+	* method that combines a birthplace, shoots, and position filter with AND or OR and displays the result
+	*@param and -- true to intersect the filters, false to unite them
+	*@param birthplace -- birthplace to match, or null for no birthplace filter
+	*@param shoots -- RosterBitmapIndex.SHOOTS_R or SHOOTS_L, or -1 for no shoots filter
+	*@param position -- position or sub-position to match, or null for no position filter
+	*/
+	public void outputCombinedQuery(boolean and, String birthplace, int shoots, String position){
+		ArrayList<String> described = new ArrayList<String>();
+		if(birthplace != null){
+			described.add("born in " + birthplace);
+		}
+		if(shoots >= 0){
+			described.add("who shoot " + queryShoots[shoots]);
+		}
+		if(position != null){
+			described.add("who play " + position);
+		}
+		if(described.isEmpty()){
+			described.add("on the roster");
+		}
+		outputMatches(index -> {
+			ArrayList<BitSet> filters = new ArrayList<BitSet>();
+			if(birthplace != null){
+				filters.add(index.birthplace(birthplace));
+			}
+			if(shoots >= 0){
+				filters.add(index.shoots(shoots));
+			}
+			if(position != null){
+				filters.add(index.position(position));
+			}
+			if(filters.isEmpty()){
+				return index.all();
+			}
+			return and ? index.and(filters.toArray(new BitSet[0])) : index.or(filters.toArray(new BitSet[0]));
+		}, "players " + String.join(and ? " AND " : " OR ", described));
+	}
+	
+	/**
+	* method that displays the count, sum, mean, min, median, 90th percentile and max of a stat for each birthplace, position, or shoots group
+	*@param groupBy -- RosterAggregator.BIRTHPLACE, POSITION, or SHOOTS
+	*@param type -- RosterStore.SKATER or RosterStore.GOALIE
+	*@param stat -- stats array index value to aggregate
+	*/
+	public void outputGroupStats(int groupBy, int type, int stat){
+		long start = RosterMetrics.start();
+		String[] statNames = type == RosterStore.GOALIE ? getHP().getGOALIE_STATS() : getHP().getSKATER_STATS();
+		String description = (type == RosterStore.GOALIE ? "GOALIES " : "SKATERS ") + statNames[RosterStore.menuIndex(type, stat)] + " by " + RosterAggregator.GROUP_BY[groupBy];
+		List<RosterPartition> partitions = getScope();
+		List<RosterSnapshot> snapshots = new ArrayList<RosterSnapshot>();
+		if(partitions == null){
+			snapshots.add(getSnapshot());
+		}
+		else{
+			for(RosterPartition partition : partitions){
+				snapshots.add(partition.getSnapshot());
+			}
+		}
+		Map<String, RosterAggregator.Group> groups = RosterAggregator.mergeByName(groupBy, PartitionedRoster.fanOut(snapshots, snapshot -> {
+			RosterAggregator aggregator = new RosterAggregator(snapshot.getStore(), groupBy, stat);
+			return aggregator.aggregateByName(type == RosterStore.GOALIE ? snapshot.getGoalieRows() : snapshot.getSkaterRows());
+		}));
+		ResultRenderer renderer = getRenderer();
+		renderer.note("\n" + description + ":");
+		renderer.beginGroups(description);
+		for(Map.Entry<String, RosterAggregator.Group> group : groups.entrySet()){
+			renderer.groupRow(group.getKey(), group.getValue());
+		}
+		renderer.endResults(groups.size());
+		long scanned = 0;
+		for(RosterSnapshot snapshot : snapshots){
+			scanned += type == RosterStore.GOALIE ? snapshot.getGoalieRows().length : snapshot.getSkaterRows().length;
+		}
+		RosterMetrics.record(RosterMetrics.GROUP, start, scanned, groups.size());
+		renderer.note("***********************************************************************");
+	}
+
+	//method that runs a Query 'subMenu' to the main program menu
+	public void userQueryOptions(){
+		int userChcMain = userOptions(queryMainMenu);	
+		int userChc = userChcMain;
+		Query query = new Query();
+		switch(userChc){ //query sub menu
+			case 1: userChc = userOptions(queryBP);
+				query.outputBirthplaceQuery(userChc-1);
+				break;
+			case 2: userChc = userOptions(queryShoots);
+				query.outputQuery(userChc-1, "skaters who shoot ", userChcMain, queryShoots);
+				break;
+			case 3: userChc = userOptions(queryPositions);
+				if(userChc == 1){
+					userChc = userOptions(queryForwardPos);
+					query.outputQuery(userChc-1, "", userChcMain, queryForwardPos);
+				}
+				else{
+					query.outputQuery(userChc-1, "", userChcMain, queryPositions);
+				}
+				break;
+			case 4: boolean and = userOptions(queryCombine) == 1;
+				String[] anyBP = Arrays.copyOf(queryBP, queryBP.length + 1);
+				anyBP[queryBP.length] = "Any";
+				int bpChc = userOptions(anyBP);
+				int shootsChc = userOptions(queryAnyShoots);
+				int positionChc = userOptions(queryAnyPositions);
+				query.outputCombinedQuery(and,
+					bpChc == anyBP.length ? null : anyBP[bpChc-1],
+					shootsChc == queryAnyShoots.length ? -1 : shootsChc-1,
+					positionChc == queryAnyPositions.length ? null : queryAnyPositions[positionChc-1]);
+				break;
+			case 5: int groupBy = userOptions(RosterAggregator.GROUP_BY);
+				boolean goalie = userOptions(queryGoalieOrSkater) == 1;
+				int stat = userOptions(goalie ? getHP().getGOALIE_STATS() : getHP().getSKATER_STATS());
+				int type = goalie ? RosterStore.GOALIE : RosterStore.SKATER;
+				query.outputGroupStats(groupBy-1, type, RosterStore.menuStat(type, stat-1));
+				break;
+			case 6: query.outputFilter(userFilter());
+				break;
+			case 7: System.out.print("  You selected: EXIT");
+				System.exit(0);
+				break;
+			default: userQueryOptions(); //reload menu bc invalid selection
+				break;	
+		}
+	}
+
+}
+
+///////////////////////////////////////////////////////////////////////////////////////////////////
+/**
+* runs Display/Sort/Query commands against the shared roster without menus, one command per line:
+*	display
+*	sort goalie|skater <stat name or menu number> <min> <max>
+*	top|bottom goalie|skater <stat name or menu number> <number of players>
+*	query birthplace <country>
+*	query shoots R|L
+*	query position <position>
+*	query combined and|or [birthplace=<country>] [shoots=R|L] [position=<position>]
+*	group birthplace|position|shoots goalie|skater <stat name or menu number>
+*	filter <expression>	(see RosterFilter, e.g., filter birthplace=Canada AND points BETWEEN 20 AND 50)
+*	order <keys>	(see RosterOrder, e.g., order points DESC, goals DESC, plusminus DESC, name LIMIT 10)
+*	similar <last name> [<team> [<season>]] <number of players>	(see StatNeighborIndex, e.g., similar Kuznetsov 5)
+*	game <last name> <goals> <assists> <+/->	(adds one game to a skater's totals)
+*	game <last name> <shots against> <saves>	(adds one game to a goalie's totals)
+*	scope <team or *> [<season or *>]	(with a league loaded, picks the partitions later commands run on)
+*	metrics	(writes the RosterMetrics report of the commands so far to stderr)
+* values with spaces are written in double quotes (e.g., position="Forward, LW"); blank lines and lines starting with # are skipped
+*/
+class BatchRunner{
+	//fields
+	private final Display display = new Display();
+	private final Sort sort = new Sort();
+	private final Query query = new Query();
+	private final ResultRenderer renderer;
+	private static final List<String> READ_ONLY = Arrays.asList("display", "sort", "top", "bottom", "query", "group", "filter", "order", "similar");
+	private final HashMap<RosterStore, GameIngestor> ingestors = new HashMap<RosterStore, GameIngestor>();
+	private int commandCount;
+	private int errorCount;
+	
+	/**
+	* constructor that sends the results of every command to one stream in the console text layout
+	* @param PrintStream stream that results are written to
+	*/
+	public BatchRunner(PrintStream out){
+		this(out, "text");
+	}
+	
+	/**
+	* constructor that sends the results of every command to one stream through one renderer
+	* @param PrintStream stream that results are written to
+	* @param String text, csv, or json
+	*/
+	public BatchRunner(PrintStream out, String format){
+		renderer = ResultRenderer.forFormat(format, out);
+		display.setRenderer(renderer);
+		sort.setRenderer(renderer);
+		query.setRenderer(renderer);
+	}
+	
+	/**
+	* method that writes any buffered results to the stream
+	*/
+	public void flush(){
+		renderer.flush();	
+	}
+	
+	/**
+	* method that runs every command read from a reader
+	* @param BufferedReader source of commands, one per line
+	*/
+	public void run(BufferedReader commands) throws IOException{
+		for(String line = commands.readLine(); line != null; line = commands.readLine()){
+			runCommand(line);
+		}
+	}
+	
+	/**
+	* method that runs every command of a list
+	* @param List<String> commands, one per entry
+	*/
+	public void run(List<String> commands){
+		for(String line : commands){
+			runCommand(line);
+		}
+	}
+	
+	/**
+	* method that runs one command, reporting (not throwing) a command that cannot run
+	* @param String command line
+	* @return boolean true if the command ran or was blank
+	*/
+	public boolean runCommand(String line){
+		String trimmed = line.trim();
+		if(trimmed.isEmpty() || trimmed.startsWith("#")){
+			return true;
+		}
+		commandCount++;
+		long start = RosterMetrics.start();
+		try{
+			execute(tokenize(trimmed));
+			RosterMetrics.record(RosterMetrics.COMMAND, start, 0, 0);
+			return true;
+		}
+		catch(RuntimeException e){
+			RosterMetrics.recordError(RosterMetrics.COMMAND, start);
+			errorCount++;
+			System.err.println("Exception in batch command " + commandCount + " (" + trimmed + "): " + e.getMessage());
+			return false;
+		}
+	}
+	
+	/**
+	* method that runs one command that only reads the roster (display, sort, top, bottom, query, group, filter, order), throwing if it cannot run
+	* @param String command line
+	*/
+	public void runReadOnly(String line){
+		ArrayList<String> words = tokenize(line.trim());
+		if(words.isEmpty() || !READ_ONLY.contains(words.get(0).toLowerCase(Locale.ROOT))){
+			throw new IllegalArgumentException("only " + String.join(", ", READ_ONLY) + " commands can run here");
+		}
+		commandCount++;
+		long start = RosterMetrics.start();
+		try{
+			execute(words);
+			RosterMetrics.record(RosterMetrics.COMMAND, start, 0, 0);
+		}
+		catch(RuntimeException e){
+			RosterMetrics.recordError(RosterMetrics.COMMAND, start);
+			errorCount++;
+			throw e;
+		}
+	}
+	
+	private void execute(ArrayList<String> words){
+		String command = words.get(0).toLowerCase(Locale.ROOT);
+		if(command.equals("display") && words.size() == 1){
+			display.getRenderer().note(display.getROSTER_HEADER());
+			display.printRoster();
+		}
+		else if(command.equals("sort") && words.size() == 5){
+			boolean goalie = goalieOrSkater(words.get(1));
+			String[] stats = goalie ? sort.getSortGoalieStats() : sort.getSortSkaterStats();
+			sort.outputSortedRange(statChoice(words.get(2), stats), stats, goalie ? RosterStore.GOALIE : RosterStore.SKATER, goalie ? "GOALIES" : "SKATERS", number(words.get(3)), number(words.get(4)));
+		}
+		else if((command.equals("top") || command.equals("bottom")) && words.size() == 4){
+			boolean goalie = goalieOrSkater(words.get(1));
+			String[] stats = goalie ? sort.getSortGoalieStats() : sort.getSortSkaterStats();
+			sort.outputLeaders(statChoice(words.get(2), stats), stats, goalie ? RosterStore.GOALIE : RosterStore.SKATER, goalie ? "GOALIES" : "SKATERS", number(words.get(3)), command.equals("top"));
+		}
+		else if(command.equals("group") && words.size() == 4){
+			boolean goalie = goalieOrSkater(words.get(2));
+			String[] stats = goalie ? sort.getSortGoalieStats() : sort.getSortSkaterStats();
+			int type = goalie ? RosterStore.GOALIE : RosterStore.SKATER;
+			query.outputGroupStats(groupChoice(words.get(1)), type, RosterStore.menuStat(type, statChoice(words.get(3), stats) - 1));
+		}
+		else if(command.equals("query") && words.size() >= 2){
+			query(words.get(1).toLowerCase(Locale.ROOT), words);
+		}
+		else if(command.equals("filter") && words.size() >= 2){
+			query.outputFilter(String.join(" ", words.subList(1, words.size())));
+		}
+		else if(command.equals("order") && words.size() >= 2){
+			sort.outputOrder(String.join(" ", words.subList(1, words.size())));
+		}
+		else if(command.equals("similar") && words.size() >= 3){
+			sort.outputSimilar(String.join(" ", words.subList(1, words.size() - 1)), number(words.get(words.size() - 1)));
+		}
+		else if(command.equals("game") && (words.size() == 4 || words.size() == 5)){
+			game(words);
+		}
+		else if(command.equals("metrics") && words.size() == 1){
+			renderer.flush();
+			System.err.print(RosterMetrics.report());
+		}
+		else if(command.equals("scope") && (words.size() == 2 || words.size() == 3)){
+			Output.setScope(words.get(1), words.size() == 3 ? words.get(2) : "*");
+			query.setQueryBP();
+		}
+		else{
+			throw new IllegalArgumentException("unknown command");
+		}
+	}
+	
+	private void query(String filter, ArrayList<String> words){
+		if(filter.equals("combined") && words.size() >= 3){
+			String combine = words.get(2).toLowerCase(Locale.ROOT);
+			if(!combine.equals("and") && !combine.equals("or")){
+				throw new IllegalArgumentException("combined queries start with and or or");
+			}
+			String birthplace = null;
+			int shoots = -1;
+			String position = null;
+			for(int i = 3; i < words.size(); i++){
+				String word = words.get(i);
+				int equals = word.indexOf('=');
+				String key = equals < 0 ? word : word.substring(0, equals).toLowerCase(Locale.ROOT);
+				String value = word.substring(equals + 1);
+				switch(key){
+					case "birthplace": birthplace = value;
+						break;
+					case "shoots": shoots = shootsChoice(value);
+						break;
+					case "position": position = value;
+						break;
+					default: throw new IllegalArgumentException("unknown filter " + word);
+				}
+			}
+			query.outputCombinedQuery(combine.equals("and"), birthplace, shoots, position);
+		}
+		else if(words.size() != 3){
+			throw new IllegalArgumentException("expected query <filter> <value>");
+		}
+		else if(filter.equals("birthplace")){
+			query.outputQuery(0, "players born in ", 1, words.get(2));
+		}
+		else if(filter.equals("shoots")){
+			query.outputQuery(shootsChoice(words.get(2)), "skaters who shoot ", 2, query.getQueryShoots());
+		}
+		else if(filter.equals("position")){
+			query.outputQuery(0, "", 3, words.get(2));
+		}
+		else{
+			throw new IllegalArgumentException("unknown query " + filter);
+		}
+	}
+	
+	//finds the player in the roster, or in the one partition of the scope that has them
+	private void game(ArrayList<String> words){
+		List<RosterStore> stores = new ArrayList<RosterStore>();
+		if(Output.getScope() == null){
+			stores.add(Output.getSnapshot().getStore());
+		}
+		else{
+			for(RosterPartition partition : Output.getScope()){
+				stores.add(partition.getStore());
+			}
+		}
+		GameIngestor ingestor = null;
+		for(RosterStore candidate : stores){
+			GameIngestor candidateIngestor = ingestors.computeIfAbsent(candidate, GameIngestor::new);
+			if(candidateIngestor.hasPlayer(words.get(1))){
+				if(ingestor != null){
+					throw new IllegalArgumentException("more than one player named " + words.get(1) + "; pick a team with scope");
+				}
+				ingestor = candidateIngestor;
+			}
+		}
+		if(ingestor == null){
+			throw new IllegalArgumentException("no player named " + words.get(1));
+		}
+		RosterStore store = ingestor.getStore();
+		int row = ingestor.findRow(words.get(1));
+		if(store.isGoalie(row) != (words.size() == 4)){
+			throw new IllegalArgumentException(store.isGoalie(row) ? "expected game <last name> <shots against> <saves>" : "expected game <last name> <goals> <assists> <+/->");
+		}
+		if(words.size() == 4){
+			ingestor.applyGoalieGame(row, number(words.get(2)), number(words.get(3)));
+		}
+		else{
+			ingestor.applySkaterGame(row, number(words.get(2)), number(words.get(3)), number(words.get(4)));
+		}
+	}
+	
+	private boolean goalieOrSkater(String word){
+		if(word.equalsIgnoreCase("goalie") || word.equalsIgnoreCase("goalies")){
+			return true;
+		}
+		if(word.equalsIgnoreCase("skater") || word.equalsIgnoreCase("skaters")){
+			return false;
+		}
+		throw new IllegalArgumentException("expected goalie or skater, not " + word);
+	}
+	
+	//accepts the menu number or the name of a stat
+	private int statChoice(String word, String[] stats){
+		for(int i = 0; i < stats.length; i++){
+			if(stats[i].equalsIgnoreCase(word) || word.equals(Integer.toString(i + 1))){
+				return i + 1;
+			}
+		}
+		throw new IllegalArgumentException("unknown stat " + word + "; expected one of " + String.join(", ", stats));
+	}
+	
+	private int groupChoice(String word){
+		for(int i = 0; i < RosterAggregator.GROUP_BY.length; i++){
+			if(RosterAggregator.GROUP_BY[i].equalsIgnoreCase(word)){
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("expected group birthplace, position, or shoots, not " + word);
+	}
+	
+	private int shootsChoice(String word){
+		String[] shoots = query.getQueryShoots();
+		for(int i = 0; i < shoots.length; i++){
+			if(shoots[i].equalsIgnoreCase(word)){
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("expected shoots R or L, not " + word);
+	}
+	
+	private int number(String word){
+		try{
+			return Integer.parseInt(word);
+		}
+		catch(NumberFormatException e){
+			throw new IllegalArgumentException("expected a whole number, not " + word);
+		}
+	}
+	
+	//splits on spaces outside double quotes, dropping the quotes
+	private static ArrayList<String> tokenize(String line){
+		ArrayList<String> words = new ArrayList<String>();
+		StringBuilder word = new StringBuilder();
+		boolean quoted = false;
+		boolean inWord = false;
+		for(int i = 0; i < line.length(); i++){
+			char c = line.charAt(i);
+			if(c == '"'){
+				quoted = !quoted;
+				inWord = true;
+			}
+			else if(Character.isWhitespace(c) && !quoted){
+				if(inWord){
+					words.add(word.toString());
+					word.setLength(0);
+					inWord = false;
+				}
+			}
+			else{
+				word.append(c);
+				inWord = true;
+			}
+		}
+		if(quoted){
+			throw new IllegalArgumentException("unclosed quote");
+		}
+		if(inWord){
+			words.add(word.toString());
+		}
+		return words;
+	}
+	
+	//getters
+	public int getCommandCount(){
+		return commandCount;	
+	}
+	
+	public int getErrorCount(){
+		return errorCount;	
+	}
+}
+
+///////////////////////////////////////////////////////////////////////////////////////////////////
+/**
+* times the roster hot paths on synthetic rosters of growing size and prints one line per benchmark and size,
+* so scaling curves and regressions show up without a harness dependency:
+*	java -Xmx8g RosterBenchmark [largest roster size, default 1000000] [csv]
+* sizes run from 31 (one team) up to the largest size by factors of 10; the legacy HockeyPlayer list paths stop at LEGACY_MAX
+*/
+class RosterBenchmark{
+	//fields
+	public static final int[] SIZES = {31, 1_000, 10_000, 100_000, 1_000_000, 10_000_000};
+	public static final int LEGACY_MAX = 1_000_000;
+	private static final long WARMUP_NANOS = 300_000_000L;
+	private static final long MEASURE_NANOS = 1_000_000_000L;
+	private static volatile long sink; //keeps results alive so the JIT cannot drop the work
+	private final boolean csv;
+	
+	public RosterBenchmark(boolean csv){
+		this.csv = csv;
+	}
+	
+	//main method
+	public static void main(String... args) throws IOException{
+		int largest = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		RosterBenchmark benchmark = new RosterBenchmark(args.length > 1 && args[1].equalsIgnoreCase("csv"));
+		benchmark.header();
+		for(int size : SIZES){
+			if(size <= largest){
+				benchmark.runAll(size);
+			}
+		}
+	}
+	
+	/**
+	* method that builds a roster with about 1 goalie per 10 players and a birthplace count that grows with the roster
+	* (one per 50 players, at least 9) as it does when many seasons of international players are loaded
+	* @param int number of players
+	* @param long seed of the random stats
+	* @return RosterStore synthetic roster
+	*/
+	public static RosterStore syntheticRoster(int players, long seed){
+		Random random = new Random(seed);
+		RosterStore store = new RosterStore(players);
+		int birthplaces = Math.max(9, players / 50);
+		int[] stats = new int[RosterStore.MAX_STATS];
+		for(int i = 0; i < players; i++){
+			PlayerPosition position = PlayerPosition.fromCode(i % 10 == 9 ? PlayerPosition.GOALIE.getCode() : random.nextInt(4));
+			String birthplace = "Country " + random.nextInt(birthplaces);
+			if(position.isGoalie()){
+				stats[0] = random.nextInt(2000);
+				stats[1] = random.nextInt(Math.max(stats[0] / 8, 1));
+				stats[2] = stats[0] - stats[1];
+				store.add("Goalie" + i, position.getCode(), store.getBirthplaces().encode(birthplace), stats, RosterStore.GOALIE_STATS);
+			}
+			else{
+				stats[0] = random.nextInt(50);
+				stats[1] = random.nextInt(60);
+				stats[2] = stats[0] + stats[1];
+				stats[3] = random.nextInt(61) - 30;
+				stats[4] = random.nextInt(2);
+				store.add("Skater" + i, position.getCode(), store.getBirthplaces().encode(birthplace), stats, RosterStore.MAX_STATS);
+			}
+		}
+		return store;
+	}
+	
+	/**
+	* method that writes a store as a roster CSV file for RosterLoader
+	* @param RosterStore players to write
+	* @param Path file to create
+	*/
+	public static void writeCsv(RosterStore store, Path file) throws IOException{
+		try(PrintStream out = new PrintStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16), false, "UTF-8")){
+			StringBuilder line = new StringBuilder();
+			for(int row = 0; row < store.size(); row++){
+				line.setLength(0);
+				line.append(store.getLastName(row)).append(",\"").append(store.getPosition(row)).append("\",").append(store.getBirthplace(row));
+				for(int stat = 0; stat < store.getStatCount(row); stat++){
+					line.append(',').append(store.getStat(row, stat));
+				}
+				out.append(line).append('\n');
+			}
+		}
+	}
+	
+	/**
+	* method that runs every benchmark on one roster size, with the shared RosterResultCache off so each run does the full work
+	* (only the rows labelled cached turn it on)
+	* @param int number of players
+	*/
+	public void runAll(int size) throws IOException{
+		RosterResultCache.getShared().setCapacity(0);
+		RosterStore store = syntheticRoster(size, 2018);
+		Output.setSnapshot(new RosterSnapshot(store));
+		PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+		Sort sort = new Sort();
+		sort.setOut(discard);
+		Query query = new Query();
+		query.setOut(discard);
+		String[] birthplaces = Output.getSnapshot().getSortedBirthplaces();
+		
+		Path file = Files.createTempFile("roster-benchmark", ".csv");
+		try{
+			writeCsv(store, file);
+			measure("RosterLoader.load (setRoster)", size, () -> {
+				try{
+					sink += RosterLoader.load(file).size();
+				}
+				catch(IOException e){
+					throw new UncheckedIOException(e);
+				}
+			});
+		}
+		finally{
+			Files.deleteIfExists(file);
+		}
+		Path snapshotFile = Files.createTempFile("roster-benchmark", RosterSnapshotFile.EXTENSION);
+		try{
+			RosterSnapshotFile.write(store, snapshotFile);
+			measure("RosterSnapshotFile.read (with indexes)", size, () -> {
+				try{
+					sink += RosterSnapshotFile.read(snapshotFile).size();
+				}
+				catch(IOException e){
+					throw new UncheckedIOException(e);
+				}
+			});
+			measure("RosterSnapshotFile.map (off-heap)", size, () -> {
+				try{
+					sink += RosterSnapshotFile.map(snapshotFile).size();
+				}
+				catch(IOException e){
+					throw new UncheckedIOException(e);
+				}
+			});
+		}
+		finally{
+			Files.deleteIfExists(snapshotFile);
+		}
+		measure("RosterStore.fromRoster", size, () -> sink += RosterStore.fromRoster(Output.getSnapshot().getHP().getRoster()).size(), size <= LEGACY_MAX);
+		measure("SortedStatIndex build", size, () -> sink += new SortedStatIndex(store, RosterStore.SKATER, 2).size());
+		HockeyPlayer hp = new HockeyPlayer(store);
+		hp.setSortHPBy(3);
+		measure("HockeyPlayer.setRosterSorted", size, () -> { hp.setRosterSorted(); sink += hp.getRosterSorted().size(); }, size <= LEGACY_MAX);
+		Comparator<HockeyPlayer> byPointsGoalsPlusMinusName = HockeyPlayer.getStatComparator(3).thenComparing(HockeyPlayer.getStatComparator(1))
+			.thenComparing(HockeyPlayer.getStatComparator(4)).thenComparing(HockeyPlayer::getLastName, String.CASE_INSENSITIVE_ORDER);
+		measure("Comparator points, goals, +/-, name", size, () -> {
+			HockeyPlayer[] players = hp.getRoster().toArray(new HockeyPlayer[0]);
+			Arrays.parallelSort(players, byPointsGoalsPlusMinusName);
+			sink += players.length;
+		}, size <= LEGACY_MAX);
+		RosterOrder order = RosterOrder.parse("points, goals, plusminus, name");
+		List<RosterStore> stores = Collections.singletonList(store);
+		measure("RosterOrder points, goals, +/-, name", size, () -> sink += order.sort(stores).length);
+		measure("HockeyPlayer.setRosterBP", size, () -> { hp.setRosterBP(); sink += hp.getRosterBP().size(); });
+		measure("RosterSnapshot sorted birthplaces", size, () -> sink += new RosterSnapshot(store).getSortedBirthplaces().length);
+		measure("Output.setJustG/setJustSk rows", size, () -> sink += store.getRowsOfType(RosterStore.GOALIE).length + store.getRowsOfType(RosterStore.SKATER).length);
+		measure("Sort.outputSortedRange 20..50 points", size, () -> sort.outputSortedRange(3, sort.getSortSkaterStats(), RosterStore.SKATER, "SKATERS", 20, 50));
+		int[] skaters = store.getRowsOfType(RosterStore.SKATER);
+		measure("StatLeaders top 10 points", size, () -> sink += StatLeaders.leaders(store.getStatColumn(2), skaters, 10, true).length);
+		measure("StatLeaders top 10 points parallel", size, () -> sink += StatLeaders.leadersParallel(store.getStatColumn(2), skaters, 10, true).length);
+		measure("StatNeighborIndex build", size, () -> sink += new StatNeighborIndex(store, RosterStore.SKATER).size());
+		long similarTo = RosterSort.pack(0, skaters[skaters.length / 2]);
+		measure("StatNeighborIndex 10 nearest", size, () -> sink += StatNeighborIndex.nearest(stores, similarTo, 10, false).length);
+		measure("Brute force 10 nearest parallel", size, () -> sink += StatNeighborIndex.nearest(stores, similarTo, 10, true).length);
+		measure("RosterAggregator points by birthplace", size, () -> sink += new RosterAggregator(store, RosterAggregator.BIRTHPLACE, 2).aggregate(skaters).length);
+		measure("DerivedStats points share column", size, () -> sink += DerivedStats.compute(store, DerivedStats.SHARE_OR_SAVE).capacity());
+		measure("RosterBitmapIndex build", size, () -> sink += new RosterBitmapIndex(store).all().cardinality());
+		measure("Query.outputQuery birthplace", size, () -> query.outputQuery(0, "players born in ", 1, birthplaces));
+		measure("Query.outputQuery position", size, () -> query.outputQuery(0, "", 3, "Forward"));
+		RosterResultCache.getShared().setCapacity(RosterResultCache.DEFAULT_CAPACITY);
+		measure("Sort.outputSortedRange 20..50 cached", size, () -> sort.outputSortedRange(3, sort.getSortSkaterStats(), RosterStore.SKATER, "SKATERS", 20, 50));
+		measure("Query.outputQuery birthplace cached", size, () -> query.outputQuery(0, "players born in ", 1, birthplaces));
+		RosterResultCache.getShared().setCapacity(0);
+		sort.getRenderer().flush();
+		query.getRenderer().flush();
+	}
+	
+	private void header(){
+		if(csv){
+			System.out.println("Benchmark,Players,Iterations,Nanoseconds per op,Ops per second");
+		}
+		else{
+			System.out.printf("%-38s %12s %10s %18s %14s%n", "Benchmark", "Players", "Iterations", "ns/op", "ops/s");
+		}
+	}
+	
+	private void measure(String name, int size, Runnable operation){
+		measure(name, size, operation, true);
+	}
+	
+	/**
+	* method that warms an operation up, then repeats it for about a second and prints the mean time per run
+	* @param String benchmark name
+	* @param int number of players
+	* @param Runnable operation to time
+	* @param boolean false to print the benchmark as skipped (e.g., a legacy path too slow for the size)
 	*/
-	public void outputQuery(int queryType, String message, int choice, String... queryOpts){
-		System.out.println("\n***********************************************************************");
-		System.out.println("RESULTS:\n" + message + " " + queryOpts[queryType] + " are:");	
-		int counter = 0;
-		for(HockeyPlayer player : getHP().getRoster()){
-		boolean conditionMet = false;
-			switch(choice){
-			case 1: if(player.getBirthplace() == queryOpts[queryType]){
-					conditionMet = true;	
-				}
-				break;
-			case 2: if(player.getStats().length == 5){
-					if(player.getStats()[4] == queryType){
-						conditionMet = true;	
+	private void measure(String name, int size, Runnable operation, boolean enabled){
+		if(!enabled){
+			if(csv){
+				System.out.println(name + "," + size + ",0,,");
+			}
+			else{
+				System.out.printf("%-38s %12d %10s %18s %14s%n", name, size, "skipped", "-", "-");
+			}
+			return;
+		}
+		long start = System.nanoTime();
+		do{
+			operation.run();
+		}while(System.nanoTime() - start < WARMUP_NANOS);
+		int iterations = 0;
+		start = System.nanoTime();
+		long elapsed;
+		do{
+			operation.run();
+			iterations++;
+			elapsed = System.nanoTime() - start;
+		}while(elapsed < MEASURE_NANOS);
+		double nanosPerOp = (double)elapsed / iterations;
+		if(csv){
+			System.out.printf("%s,%d,%d,%.1f,%.2f%n", name, size, iterations, nanosPerOp, 1e9 / nanosPerOp);
+		}
+		else{
+			System.out.printf("%-38s %12d %10d %18.1f %14.2f%n", name, size, iterations, nanosPerOp, 1e9 / nanosPerOp);
+		}
+	}
+}
+
+///////////////////////////////////////////////////////////////////////////////////////////////////
+/**
+* serves the read-only batch commands over HTTP on localhost, answering in JSON (one request, one BatchRunner, one shared roster):
+*	GET /display
+*	GET /sort?type=goalie|skater&stat=<stat>&min=<min>&max=<max>
+*	GET /top?type=goalie|skater&stat=<stat>&k=<number of players>	(and /bottom)
+*	GET /query?birthplace=<country>&shoots=R|L&position=<position>[&combine=and|or]
+*	GET /group?by=birthplace|position|shoots&type=goalie|skater&stat=<stat>
+*	GET /filter?where=<expression>	(see RosterFilter; quote values with single quotes)
+*	GET /order?by=<keys>	(see RosterOrder, e.g., by=points DESC, goals DESC, name LIMIT 10)
+*	GET /similar?player=<last name [team [season]]>&k=<number of players>
+*	GET /metrics	(the RosterMetrics report as text)
+*/
+class RosterHttpService{
+	//fields
+	private static final int MAX_THREADS_PER_CORE = 8;
+	private static final int MAX_IDLE_WORKERS = Runtime.getRuntime().availableProcessors() * MAX_THREADS_PER_CORE;
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final ConcurrentLinkedQueue<Worker> idleWorkers = new ConcurrentLinkedQueue<Worker>();
+	
+	/**
+	* constructor that binds the service to a localhost port (0 picks a free port)
+	* @param int port to listen on
+	*/
+	public RosterHttpService(int port) throws IOException{
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		executor = requestExecutor();
+		server.setExecutor(executor);
+		server.createContext("/", this::handle);
+	}
+	
+	/**
+	* method that returns a thread per request: a virtual thread on a JDK that has them (21 and later),
+	* else a platform thread from a fixed pool sized for handlers that mostly wait on sockets
+	* @return ExecutorService executor of the request handlers
+	*/
+	public static ExecutorService requestExecutor(){
+		try{
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch(ReflectiveOperationException e){
+			return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * MAX_THREADS_PER_CORE);
+		}
+	}
+	
+	public void start(){
+		server.start();	
+	}
+	
+	public void stop(){
+		server.stop(0);
+		executor.shutdown();
+	}
+	
+	public int getPort(){
+		return server.getAddress().getPort();	
+	}
+	
+	private void handle(HttpExchange exchange) throws IOException{
+		try{
+			if(!exchange.getRequestMethod().equals("GET")){
+				respond(exchange, 405, "text/plain", "Only GET is supported\n");
+				return;
+			}
+			String path = exchange.getRequestURI().getPath();
+			Map<String, String> parameters = parameters(exchange.getRequestURI().getRawQuery());
+			if(path.equals("/metrics")){
+				respond(exchange, 200, "text/plain; charset=utf-8", RosterMetrics.report());
+				return;
+			}
+			String command = command(path, parameters);
+			if(command == null){
+				respond(exchange, 404, "text/plain; charset=utf-8", "Unknown path " + path + "; expected /display, /sort, /top, /bottom, /query, /group, /filter, /order, /similar or /metrics\n");
+				return;
+			}
+			Worker worker = idleWorkers.poll();
+			if(worker == null){
+				worker = new Worker();
+			}
+			String results = worker.run(command); //a command that throws leaves its worker behind, with whatever it had half rendered
+			if(idleWorkers.size() < MAX_IDLE_WORKERS){
+				idleWorkers.offer(worker);
+			}
+			respond(exchange, 200, "application/json", results);
+		}
+		catch(IllegalArgumentException | IllegalStateException e){
+			respond(exchange, 400, "text/plain; charset=utf-8", e.getMessage() + "\n");
+		}
+		catch(RuntimeException e){
+			respond(exchange, 500, "text/plain; charset=utf-8", "Exception in handle method: " + e + "\n");
+		}
+		finally{
+			exchange.close();
+		}
+	}
+	
+	//turns a request into the batch command it stands for, or null for an unknown path
+	private static String command(String path, Map<String, String> parameters){
+		switch(path){
+			case "/display": return "display";
+			case "/sort": return "sort " + quoted(parameters, "type") + " " + quoted(parameters, "stat") + " " + quoted(parameters, "min") + " " + quoted(parameters, "max");
+			case "/top":
+			case "/bottom": return path.substring(1) + " " + quoted(parameters, "type") + " " + quoted(parameters, "stat") + " " + quoted(parameters, "k");
+			case "/group": return "group " + quoted(parameters, "by") + " " + quoted(parameters, "type") + " " + quoted(parameters, "stat");
+			case "/filter": return "filter " + quoted(parameters, "where");
+			case "/order": return "order " + quoted(parameters, "by");
+			case "/similar": return "similar " + quoted(parameters, "player") + " " + quoted(parameters, "k");
+			case "/query":
+				StringBuilder command = new StringBuilder("query combined ").append(parameters.getOrDefault("combine", "and"));
+				for(String filter : new String[]{"birthplace", "shoots", "position"}){
+					if(parameters.containsKey(filter)){
+						command.append(' ').append(filter).append('=').append(quoted(parameters, filter));
 					}
 				}
-				break;
-			case 3: if(player.getPosition().contains(queryOpts[queryType])){
-					conditionMet = true;
-				}
-				break;
-			}	
-			if(conditionMet){
-				System.out.println("\t" + player.getLastName());	
-				counter++;
+				return command.toString();
+			default: return null;
+		}
+	}
+	
+	//a BatchRunner whose Display, Sort and Query are built once and reused by one request at a time, rendering into a reset buffer
+	private static final class Worker{
+		private final ByteArrayOutputStream results = new ByteArrayOutputStream();
+		private final BatchRunner runner = new BatchRunner(new PrintStream(results, false, StandardCharsets.UTF_8), "json");
+		
+		private String run(String command){
+			results.reset();
+			runner.runReadOnly(command);
+			runner.flush();
+			return results.toString(StandardCharsets.UTF_8);
+		}
+	}
+	
+	private static String quoted(Map<String, String> parameters, String name){
+		String value = parameters.get(name);
+		if(value == null){
+			throw new IllegalArgumentException("missing parameter " + name);
+		}
+		if(value.indexOf('"') >= 0){
+			throw new IllegalArgumentException("parameter " + name + " cannot hold a double quote");
+		}
+		return "\"" + value + "\"";
+	}
+	
+	private static Map<String, String> parameters(String rawQuery){
+		HashMap<String, String> parameters = new HashMap<String, String>();
+		if(rawQuery == null){
+			return parameters;
+		}
+		for(String pair : rawQuery.split("&")){
+			int equals = pair.indexOf('=');
+			if(equals > 0){
+				parameters.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8), URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
 			}
 		}
-		System.out.println("\nTOTAL: " + counter + " " + message + " " + queryOpts[queryType] + ".");
-		System.out.println("***********************************************************************");
+		return parameters;
+	}
+	
+	private static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException{
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(status, bytes.length);
+		try(OutputStream out = exchange.getResponseBody()){
+			out.write(bytes);
+		}
 	}
+}
 
-	//method that runs a Query 'subMenu' to the main program menu
-	public void userQueryOptions(){
-		int userChcMain = userOptions(queryMainMenu);	
-		int userChc = userChcMain;
-		Query query = new Query();
-		switch(userChc){ //query sub menu
-			case 1: userChc = userOptions(queryBP);
-				query.outputQuery(userChc-1, "players born in ", userChcMain, queryBP);
+///////////////////////////////////////////////////////////////////////////////////////////////////
+/**
+* load generator for RosterHttpService: client threads send a mix of requests to localhost for a fixed time,
+* then requests per second and tail latency are printed
+*/
+class RosterLoadTest{
+	//fields
+	private static final String[] REQUESTS = {
+		"/sort?type=skater&stat=Points&min=20&max=60",
+		"/top?type=skater&stat=Goals&k=10",
+		"/bottom?type=goalie&stat=Goals%20Against&k=1",
+		"/query?birthplace=Canada",
+		"/query?shoots=L&position=Defense&combine=and",
+		"/group?by=birthplace&type=skater&stat=Points",
+		"/display"
+	};
+	
+	//main method
+	public static void main(String... args) throws Exception{
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+		int clients = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		RosterHttpService service = null;
+		if(port == 0){ //no server given, so serve the built-in roster in this JVM
+			service = new RosterHttpService(0);
+			service.start();
+			port = service.getPort();
+		}
+		try{
+			run(port, clients, seconds);
+		}
+		finally{
+			if(service != null){
+				service.stop();
+			}
+		}
+	}
+	
+	/**
+	* method that runs the load and prints the results
+	* @param int localhost port of the service
+	* @param int number of client threads, each with one request in flight
+	* @param int seconds to send requests for
+	*/
+	public static void run(int port, int clients, int seconds) throws InterruptedException{
+		HttpClient client = HttpClient.newBuilder().executor(Executors.newFixedThreadPool(Math.max(clients / 4, 1))).build();
+		long[][] latencies = new long[clients][];
+		int[] counts = new int[clients];
+		int[] errors = new int[clients];
+		long end = System.nanoTime() + seconds * 1_000_000_000L;
+		Thread[] threads = new Thread[clients];
+		for(int c = 0; c < clients; c++){
+			int id = c;
+			threads[c] = new Thread(() -> {
+				long[] own = new long[1 << 12];
+				int count = 0;
+				for(int i = id; System.nanoTime() < end; i++){
+					HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + REQUESTS[i % REQUESTS.length])).build();
+					long start = System.nanoTime();
+					try{
+						if(client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() != 200){
+							errors[id]++;
+						}
+					}
+					catch(IOException | InterruptedException e){
+						errors[id]++;
+					}
+					if(count == own.length){
+						own = Arrays.copyOf(own, count * 2);
+					}
+					own[count++] = System.nanoTime() - start;
+				}
+				latencies[id] = own;
+				counts[id] = count;
+			});
+			threads[c].start();
+		}
+		for(Thread thread : threads){
+			thread.join();
+		}
+		int total = 0;
+		int failed = 0;
+		for(int c = 0; c < clients; c++){
+			total += counts[c];
+			failed += errors[c];
+		}
+		long[] all = new long[total];
+		for(int c = 0, at = 0; c < clients; at += counts[c], c++){
+			System.arraycopy(latencies[c], 0, all, at, counts[c]);
+		}
+		Arrays.sort(all);
+		System.out.printf("%d clients for %d s: %d requests (%d failed), %.1f requests/s%n", clients, seconds, total, failed, total / (double)seconds);
+		System.out.printf("latency ms: p50 %.2f  p90 %.2f  p99 %.2f  p99.9 %.2f  max %.2f%n", percentile(all, 0.5), percentile(all, 0.9), percentile(all, 0.99), percentile(all, 0.999), total == 0 ? 0 : all[total - 1] / 1e6);
+	}
+	
+	private static double percentile(long[] sorted, double fraction){
+		if(sorted.length == 0){
+			return 0;
+		}
+		return sorted[(int)Math.max(Math.ceil(fraction * sorted.length) - 1, 0)] / 1e6;
+	}
+}
+
+///////////////////////////////////////////////////////////////////////////////////////////////////
+/**
+* randomized self-check of the roster engines against plain reference code, without a test framework:
+*	java RosterSelfCheck [rounds, default 20] [seed, default random]
+* each round builds random rosters (repeated names in mixed case, names with an apostrophe, birthplaces with spaces, tied stats)
+* and compares RosterFilter with a naive per-player predicate, RosterOrder with a Comparator chain, StatNeighborIndex with
+* its brute-force scan, and a snapshot written then read and mapped with the store it came from;
+* the first mismatch is printed with the seed that reproduces it and the exit status is 1
+*/
+class RosterSelfCheck{
+	//fields
+	private static final String[] NAMES = {"O'Brien", "o'brien", "Smith", "SMITH", "smith", "Lee", "Ng", "van Riemsdyk", "D'Amigo"};
+	private static final String[] BIRTHPLACES = {"Canada", "canada", "USA", "Czech Republic", "Sweden", "Cote d'Ivoire"};
+	private static final String[] TEAMS = {"Capitals 2018", "capitals 2017", "Bruins 2018", "Rangers 2018"};
+	private static final String[] FILTER_WORDS = {"O'Brien", "smith", "'", "Czech Republic", "canada", "d'", "an", "Iv"};
+	private static final int LARGE_ROSTER = 3 * RosterSort.PARALLEL_THRESHOLD; //large enough for the parallel filter and sort paths
+	private final Random random;
+	private int checks;
+	
+	public RosterSelfCheck(long seed){
+		this.random = new Random(seed);
+	}
+	
+	//main method
+	public static void main(String... args) throws IOException{
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : new Random().nextLong();
+		RosterSelfCheck check = new RosterSelfCheck(seed);
+		try{
+			for(int round = 0; round < rounds; round++){
+				check.runRound(round == 0);
+			}
+		}
+		catch(IllegalStateException e){
+			System.out.println("FAILED (seed " + seed + "): " + e.getMessage());
+			System.exit(1);
+		}
+		System.out.println("ok: " + check.checks + " checks in " + rounds + " rounds (seed " + seed + ")");
+	}
+	
+	/**
+	* method that runs every check once on a new set of random rosters
+	* @param boolean true to add a roster large enough for the parallel paths
+	*/
+	public void runRound(boolean large) throws IOException{
+		List<RosterStore> stores = new ArrayList<RosterStore>();
+		int count = 1 + random.nextInt(TEAMS.length);
+		for(int i = 0; i < count; i++){
+			RosterStore store = randomRoster(i == 0 && large ? LARGE_ROSTER : random.nextInt(4) == 0 ? random.nextInt(3) : random.nextInt(400));
+			store.setLabel(TEAMS[i]);
+			stores.add(store);
+		}
+		for(int i = 0; i < 20; i++){
+			checkFilter(stores);
+		}
+		for(int i = 0; i < 10; i++){
+			checkOrder(stores);
+		}
+		for(int i = 0; i < 10; i++){
+			checkNeighbors(stores);
+		}
+		for(RosterStore store : stores){
+			checkSnapshot(store);
+		}
+	}
+	
+	/**
+	* method that builds a roster of every position with few distinct names, birthplaces and stat values, so ties are common
+	* @param int number of players
+	* @return RosterStore random roster
+	*/
+	public RosterStore randomRoster(int players){
+		RosterStore store = new RosterStore(players);
+		int[] stats = new int[RosterStore.MAX_STATS];
+		for(int i = 0; i < players; i++){
+			PlayerPosition position = PlayerPosition.fromCode(random.nextInt(PlayerPosition.count()));
+			String name = NAMES[random.nextInt(NAMES.length)] + (random.nextBoolean() ? "" : random.nextInt(players));
+			int birthplace = store.getBirthplaces().encode(BIRTHPLACES[random.nextInt(BIRTHPLACES.length)]);
+			if(position.isGoalie()){
+				stats[0] = random.nextInt(300);
+				stats[1] = random.nextInt(Math.max(stats[0] / 8, 1));
+				stats[2] = stats[0] - stats[1];
+				store.add(name, position.getCode(), birthplace, stats, RosterStore.GOALIE_STATS);
+			}
+			else{
+				stats[0] = random.nextInt(20);
+				stats[1] = random.nextInt(20);
+				stats[2] = stats[0] + stats[1];
+				stats[3] = random.nextInt(21) - 10;
+				stats[4] = random.nextInt(2);
+				store.add(name, position.getCode(), birthplace, stats, RosterStore.MAX_STATS);
+			}
+		}
+		return store;
+	}
+	
+	//RosterFilter.evaluate, and the parse of its toString, against a predicate built from the same random expression
+	private void checkFilter(List<RosterStore> stores){
+		StringBuilder expression = new StringBuilder();
+		BiPredicate<RosterStore, Integer> expected = randomFilter(stores, 3, expression);
+		RosterFilter filter = RosterFilter.parse(expression.toString());
+		RosterFilter reparsed;
+		try{
+			reparsed = RosterFilter.parse(filter.toString());
+		}
+		catch(IllegalArgumentException e){
+			throw new IllegalStateException("filter " + filter + " (printed from " + expression + ") does not parse again: " + e.getMessage());
+		}
+		for(RosterStore store : stores){
+			BitSet naive = new BitSet(store.size());
+			for(int row = 0; row < store.size(); row++){
+				naive.set(row, expected.test(store, row));
+			}
+			check(naive.equals(filter.evaluate(store)), "filter " + expression + " kept " + filter.evaluate(store).cardinality() + " of " + store.size() + " players, not " + naive.cardinality());
+			check(naive.equals(reparsed.evaluate(store)), "filter " + filter + " (printed from " + expression + ") kept other players once parsed again");
+		}
+	}
+	
+	private BiPredicate<RosterStore, Integer> randomFilter(List<RosterStore> stores, int depth, StringBuilder expression){
+		int kind = depth == 0 ? 3 : random.nextInt(5);
+		if(kind < 2){
+			expression.append('(');
+			BiPredicate<RosterStore, Integer> left = randomFilter(stores, depth - 1, expression);
+			expression.append(kind == 0 ? " AND " : " OR ");
+			BiPredicate<RosterStore, Integer> right = randomFilter(stores, depth - 1, expression);
+			expression.append(')');
+			return kind == 0 ? left.and(right) : left.or(right);
+		}
+		if(kind == 2){
+			expression.append("NOT ");
+			return randomFilter(stores, depth - 1, expression).negate();
+		}
+		int field = random.nextBoolean() ? RosterFilter.STAT_FIELDS.length + random.nextInt(5) : random.nextInt(RosterFilter.STAT_FIELDS.length);
+		if(field >= RosterFilter.STAT_FIELDS.length){
+			return randomTextTerm(field - RosterFilter.STAT_FIELDS.length, expression);
+		}
+		int type = RosterFilter.STAT_TYPES[field];
+		int stat = RosterFilter.STAT_INDEXES[field];
+		int low = sampleStat(stores, type, stat) + random.nextInt(3) - 1;
+		int high = sampleStat(stores, type, stat) + random.nextInt(3) - 1;
+		String operator = new String[]{"=", "!=", "<", "<=", ">", ">=", "BETWEEN"}[random.nextInt(7)];
+		expression.append(RosterFilter.STAT_FIELDS[field]).append(' ').append(operator).append(' ').append(low);
+		if(operator.equals("BETWEEN")){
+			expression.append(" AND ").append(high);
+		}
+		return (store, row) -> {
+			if(store.getType(row) != type){
+				return false;
+			}
+			long value = store.getStat(row, stat);
+			switch(operator){
+				case "=": return value == low;
+				case "!=": return value != low;
+				case "<": return value < low;
+				case "<=": return value <= low;
+				case ">": return value > low;
+				case ">=": return value >= low;
+				default: return low <= value && value <= high;
+			}
+		};
+	}
+	
+	private BiPredicate<RosterStore, Integer> randomTextTerm(int field, StringBuilder expression){
+		String operator = new String[]{"=", "!=", "~"}[random.nextInt(field < 2 ? 3 : 2)]; //~ only applies to name and birthplace
+		BiPredicate<RosterStore, Integer> test;
+		String value;
+		switch(field){
+			case 0:
+				value = random.nextBoolean() ? NAMES[random.nextInt(NAMES.length)] : FILTER_WORDS[random.nextInt(FILTER_WORDS.length)];
+				expression.append("name");
+				test = (store, row) -> matches(store.getLastName(row), operator, value);
 				break;
-			case 2: userChc = userOptions(queryShoots);
-				query.outputQuery(userChc-1, "skaters who shoot ", userChcMain, queryShoots);
+			case 1:
+				value = random.nextBoolean() ? BIRTHPLACES[random.nextInt(BIRTHPLACES.length)] : FILTER_WORDS[random.nextInt(FILTER_WORDS.length)];
+				expression.append("birthplace");
+				test = (store, row) -> matches(store.getBirthplace(row), operator, value);
 				break;
-			case 3: userChc = userOptions(queryPositions);
-				if(userChc == 1){
-					userChc = userOptions(queryForwardPos);
-					query.outputQuery(userChc-1, "", userChcMain, queryForwardPos);
-				}
-				else{
-					query.outputQuery(userChc-1, "", userChcMain, queryPositions);
-				}
+			case 2:
+				PlayerPosition position = PlayerPosition.fromCode(random.nextInt(PlayerPosition.count()));
+				int form = random.nextInt(3);
+				value = form == 0 || position.getSubPosition() == null ? position.getLabel() : form == 1 ? position.getGroup().getLabel() : position.getSubPosition();
+				expression.append("position");
+				test = (store, row) -> {
+					PlayerPosition player = store.getPlayerPosition(row);
+					return player.getLabel().equalsIgnoreCase(value) || player.getGroup().getLabel().equalsIgnoreCase(value) || value.equalsIgnoreCase(player.getSubPosition());
+				};
 				break;
-			case 4: System.out.print("  You selected: EXIT");
-				System.exit(0);
+			case 3:
+				value = random.nextBoolean() ? "R" : "l";
+				expression.append("shoots");
+				test = (store, row) -> !store.isGoalie(row) && store.getStat(row, 4) == (value.equalsIgnoreCase("R") ? RosterBitmapIndex.SHOOTS_R : RosterBitmapIndex.SHOOTS_L);
+				break;
+			default:
+				value = random.nextBoolean() ? "Goalie" : "skater";
+				expression.append("type");
+				test = (store, row) -> store.isGoalie(row) == value.equalsIgnoreCase("goalie");
 				break;
-			default: userQueryOptions(); //reload menu bc invalid selection
-				break;	
+		}
+		expression.append(operator);
+		if(random.nextBoolean() || value.startsWith("'")){
+			expression.append('\'').append(value.replace("'", "''")).append('\'');
+		}
+		else{
+			expression.append(value);
+		}
+		return operator.equals("!=") ? test.negate() : test;
+	}
+	
+	//name or birthplace = or ~ (the caller negates !=)
+	private static boolean matches(String text, String operator, String value){
+		if(operator.equals("~")){
+			return text.toLowerCase(Locale.ROOT).contains(value.toLowerCase(Locale.ROOT));
+		}
+		return text.equalsIgnoreCase(value);
+	}
+	
+	//a stat value of a random player of the type, or a small number when no store has one
+	private int sampleStat(List<RosterStore> stores, int type, int stat){
+		for(int tries = 0; tries < 20; tries++){
+			RosterStore store = stores.get(random.nextInt(stores.size()));
+			if(store.size() > 0){
+				int row = random.nextInt(store.size());
+				if(store.getType(row) == type){
+					return store.getStat(row, stat);
+				}
+			}
+		}
+		return random.nextInt(20);
+	}
+	
+	//RosterOrder.sort against a stable sort of every player by the Comparator chain the order describes
+	private void checkOrder(List<RosterStore> stores){
+		List<String> fields = new ArrayList<String>(Arrays.asList("name", "birthplace", "position", "type", "team"));
+		fields.addAll(Arrays.asList(RosterFilter.STAT_FIELDS));
+		StringJoiner order = new StringJoiner(", ");
+		Comparator<long[]> expected = null;
+		for(int keys = 1 + random.nextInt(4); keys > 0; keys--){
+			String field = fields.get(random.nextInt(fields.size()));
+			boolean descending = random.nextBoolean();
+			order.add(field + (descending ? " DESC" : random.nextBoolean() ? " asc" : ""));
+			Comparator<long[]> key = orderKey(stores, field, descending);
+			expected = expected == null ? key : expected.thenComparing(key);
+		}
+		int limit = random.nextInt(3) == 0 ? random.nextInt(50) : Integer.MAX_VALUE;
+		String text = order + (limit == Integer.MAX_VALUE ? "" : " LIMIT " + limit);
+		List<long[]> players = new ArrayList<long[]>();
+		for(int s = 0; s < stores.size(); s++){
+			for(int row = 0; row < stores.get(s).size(); row++){
+				players.add(new long[]{s, row});
+			}
+		}
+		players.sort(expected);
+		long[] sorted = RosterOrder.parse(text).sort(stores);
+		check(sorted.length == Math.min(players.size(), limit), "order " + text + " returned " + sorted.length + " of " + players.size() + " players");
+		for(int i = 0; i < sorted.length; i++){
+			long[] player = players.get(i);
+			check(RosterSort.key(sorted[i]) == player[0] && RosterSort.row(sorted[i]) == player[1], "order " + text + " differs from the Comparator chain at place " + i);
+		}
+	}
+	
+	//a stat sorts the players of its type first and the rest after them in either direction, as RosterOrder documents
+	private static Comparator<long[]> orderKey(List<RosterStore> stores, String field, boolean descending){
+		int stat = RosterFilter.statField(field);
+		if(stat >= 0){
+			int type = RosterFilter.STAT_TYPES[stat];
+			int index = RosterFilter.STAT_INDEXES[stat];
+			Comparator<long[]> hasStat = Comparator.comparingInt(player -> stores.get((int)player[0]).getType((int)player[1]) == type ? 0 : 1);
+			Comparator<long[]> value = Comparator.comparingInt(player -> stores.get((int)player[0]).getType((int)player[1]) == type ? stores.get((int)player[0]).getStat((int)player[1], index) : 0);
+			return hasStat.thenComparing(descending ? value.reversed() : value);
+		}
+		Comparator<String> text = String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.naturalOrder());
+		Comparator<long[]> key;
+		switch(field){
+			case "name": key = Comparator.comparing(player -> stores.get((int)player[0]).getLastName((int)player[1]), text); break;
+			case "birthplace": key = Comparator.comparing(player -> stores.get((int)player[0]).getBirthplace((int)player[1]), text); break;
+			case "team": key = Comparator.comparing(player -> stores.get((int)player[0]).getLabel(), text); break;
+			case "position": key = Comparator.comparingInt(player -> stores.get((int)player[0]).getPlayerPosition((int)player[1]).getCode()); break;
+			default: key = Comparator.comparingInt(player -> stores.get((int)player[0]).getType((int)player[1])); break;
+		}
+		return descending ? key.reversed() : key;
+	}
+	
+	//the k-d tree search against the brute-force scan, over all stores and over one store, before and after a game update
+	private void checkNeighbors(List<RosterStore> stores){
+		int s = random.nextInt(stores.size());
+		RosterStore store = stores.get(s);
+		if(store.size() == 0){
+			return;
+		}
+		int row = random.nextInt(store.size());
+		int k = new int[]{0, 1, 5, 50, store.size() + 1}[random.nextInt(5)];
+		long player = RosterSort.pack(s, row);
+		check(Arrays.equals(StatNeighborIndex.nearest(stores, player, k, false), StatNeighborIndex.nearest(stores, player, k, true)), k + " players nearest to " + store.getLastName(row) + " differ from the brute-force scan");
+		List<RosterStore> one = Collections.singletonList(store);
+		long own = RosterSort.pack(0, row);
+		check(Arrays.equals(StatNeighborIndex.nearest(one, own, k, false), StatNeighborIndex.nearest(one, own, k, true)), k + " players nearest to " + store.getLastName(row) + " in " + store.getLabel() + " differ from the brute-force scan");
+		int updated = random.nextInt(store.size());
+		store.setStat(updated, random.nextInt(store.getStatCount(updated)), random.nextInt(100));
+		check(Arrays.equals(StatNeighborIndex.nearest(stores, player, k, false), StatNeighborIndex.nearest(stores, player, k, true)), k + " players nearest to " + store.getLastName(row) + " differ from the brute-force scan after a game update");
+	}
+	
+	//a snapshot read into the heap and mapped off-heap against the store it was written from
+	private void checkSnapshot(RosterStore store) throws IOException{
+		Path file = Files.createTempFile("selfcheck", RosterSnapshotFile.EXTENSION);
+		try{
+			RosterSnapshotFile.write(store, file);
+			RosterSnapshotFile.setVerifyOnLoad(random.nextBoolean()); //a sound file passes the content checks too
+			RosterStore[] loaded = {RosterSnapshotFile.read(file), RosterSnapshotFile.map(file)};
+			String filter = "birthplace~a AND NOT position=Defense OR goals > 9 OR save_pct >= 900";
+			String order = "points DESC, save_pct DESC, name, birthplace";
+			for(RosterStore copy : loaded){
+				String what = (copy.isOffHeap() ? "mapped" : "read") + " snapshot of " + store.getLabel();
+				check(copy.size() == store.size() && store.getLabel().equals(copy.getLabel()), what + " has " + copy.size() + " players, not " + store.size());
+				for(int row = 0; row < store.size(); row++){
+					check(store.getLastName(row).equals(copy.getLastName(row)) && store.getPlayerPosition(row) == copy.getPlayerPosition(row) && store.getBirthplace(row).equals(copy.getBirthplace(row))
+						&& store.getType(row) == copy.getType(row) && Arrays.equals(store.getStats(row), copy.getStats(row)), what + " differs at player " + row);
+					for(int stat = DerivedStats.SHARE_OR_SAVE; stat <= DerivedStats.RATIO_OR_GA_RATE; stat++){
+						check(store.getStat(row, stat) == copy.getStat(row, stat), what + " differs at derived stat " + stat + " of player " + row);
+					}
+				}
+				for(int code = 0; code < store.getBirthplaces().size(); code++){
+					check(store.getBitmapIndex().birthplace(code).equals(copy.getBitmapIndex().birthplace(code)), what + " finds other players born in " + store.getBirthplaces().decode(code));
+				}
+				check(RosterFilter.parse(filter).evaluate(store).equals(RosterFilter.parse(filter).evaluate(copy)), what + " keeps other players for " + filter);
+				check(Arrays.equals(RosterOrder.parse(order).sort(Collections.singletonList(store)), RosterOrder.parse(order).sort(Collections.singletonList(copy))), what + " sorts differently by " + order);
+				for(int type : new int[]{RosterStore.SKATER, RosterStore.GOALIE}){
+					for(int i = 0; i < RosterStore.menuSize(type); i++){
+						int stat = RosterStore.menuStat(type, i);
+						int min = random.nextInt(20);
+						int max = min + random.nextInt(200);
+						check(rows(store.getSortedIndex(type, stat), min, max).equals(rows(copy.getSortedIndex(type, stat), min, max)), what + " finds other players with stat " + stat + " in " + min + ".." + max);
+					}
+				}
+			}
+			if(store.size() > 0){
+				RosterStore mapped = loaded[1];
+				int before = mapped.getStat(0, 0);
+				mapped.setStat(0, 0, before + 1);
+				check(mapped.getStat(0, 0) == before + 1 && RosterSnapshotFile.map(file).getStat(0, 0) == before, "a game update of a mapped snapshot did not stay in memory");
+			}
+		}
+		finally{
+			Files.delete(file);
+		}
+	}
+	
+	private static List<Integer> rows(StatRangeIndex index, int min, int max){
+		List<Integer> rows = new ArrayList<Integer>();
+		index.rows(min, max).forEachRemaining((IntConsumer)rows::add);
+		return rows;
+	}
+	
+	private void check(boolean passed, String problem){
+		checks++;
+		if(!passed){
+			throw new IllegalStateException(problem);
 		}
 	}
-
 }
 
 ///////////////////////////////////////////////////////////////////////////////////////////////////
 public class IlluminateHockeyData{
+	//fields
+	private static final String USAGE = "Usage: java IlluminateHockeyData [--roster <file.csv> | --league <directory>] [--batch <commands.txt | ->] [--command \"<command>\"]... [--out <results.txt>] [--format text|csv|json] [--metrics] [--serve <port>] [--save-snapshot <file.ihd | directory>] [--cache-size <results>] [--off-heap] [--verify-snapshots]";
+	
 	//main method
 	public static void main(String... args){
+		String rosterFile = null;
+		String leagueDirectory = null;
+		String batchFile = null;
+		String outFile = null;
+		String format = "text";
+		boolean metrics = false;
+		int port = -1;
+		String snapshotTarget = null;
+		ArrayList<String> commands = new ArrayList<String>();
+		try{
+			for(int i = 0; i < args.length; i++){
+				switch(args[i]){
+					case "--roster": rosterFile = args[++i];
+						break;
+					case "--league": leagueDirectory = args[++i];
+						break;
+					case "--metrics": metrics = true;
+						break;
+					case "--serve": port = Integer.parseInt(args[++i]);
+						break;
+					case "--save-snapshot": snapshotTarget = args[++i];
+						break;
+					case "--cache-size": RosterResultCache.getShared().setCapacity(Integer.parseInt(args[++i]));
+						break;
+					case "--off-heap": RosterStore.setOffHeapByDefault(true);
+						break;
+					case "--verify-snapshots": RosterSnapshotFile.setVerifyOnLoad(true);
+						break;
+					case "--batch": batchFile = args[++i];
+						break;
+					case "--command": commands.add(args[++i]);
+						break;
+					case "--out": outFile = args[++i];
+						break;
+					case "--format": format = args[++i];
+						ResultRenderer.forFormat(format, System.out); //rejects an unknown format up front
+						break;
+					default: if(rosterFile != null || args[i].startsWith("--")){
+							throw new IllegalArgumentException("Unexpected argument " + args[i]);
+						}
+						rosterFile = args[i]; //a bare first argument is the roster file
+						break;
+				}
+			}
+		}
+		catch(ArrayIndexOutOfBoundsException | IllegalArgumentException e){
+			System.out.println(USAGE);
+			System.exit(1);
+		}
+		RosterMetrics.registerMBeans();
+		if(metrics){ //every exit path ends in System.exit, so the report is written by a shutdown hook
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> System.err.print(RosterMetrics.report())));
+		}
+		if(leagueDirectory != null){
+			if(rosterFile != null){
+				System.out.println(USAGE);
+				System.exit(1);
+			}
+			try{
+				Output.loadLeague(Paths.get(leagueDirectory));
+			}
+			catch(IOException e){
+				System.out.println("Exception loading league directory " + leagueDirectory + ": " + e);
+				System.exit(1);
+			}
+		}
+		if(rosterFile != null){
+			try{
+				Output.loadRoster(Paths.get(rosterFile));
+			}
+			catch(IOException e){
+				System.out.println("Exception loading roster file " + rosterFile + ": " + e);
+				System.exit(1);
+			}
+		}
+		if(snapshotTarget != null){
+			System.exit(saveSnapshot(Paths.get(snapshotTarget), leagueDirectory != null) ? 0 : 1);
+		}
+		if(batchFile != null || !commands.isEmpty()){
+			System.exit(runBatch(batchFile, commands, outFile, format) ? 0 : 1);
+		}
+		if(port >= 0){
+			try{
+				RosterHttpService service = new RosterHttpService(port);
+				service.start();
+				System.err.println("Serving the roster on http://localhost:" + service.getPort() + "/ (stop with Ctrl+C)");
+			}
+			catch(IOException e){
+				System.out.println("Exception starting the service on port " + port + ": " + e);
+				System.exit(1);
+			}
+			return;
+		}
 		Output output = new Output();
 		output.mainMenu();
 	}
+	
+	/**
+	* method that saves the loaded roster as a snapshot file, or every partition of a loaded league as <team>-<season>.ihd in a directory
+	* @param Path snapshot file, or directory for a league
+	* @param boolean true if a league is loaded
+	* @return boolean true if every file was written
+	*/
+	public static boolean saveSnapshot(Path target, boolean league){
+		long start = System.nanoTime();
+		int files = 0;
+		try{
+			if(league){
+				Files.createDirectories(target);
+				for(RosterPartition partition : Output.getScope()){
+					RosterSnapshotFile.write(partition.getStore(), target.resolve(partition.getTeam().toLowerCase(Locale.ROOT) + "-" + partition.getSeason() + RosterSnapshotFile.EXTENSION));
+					files++;
+				}
+			}
+			else{
+				RosterSnapshotFile.write(Output.getSnapshot().getStore(), target);
+				files++;
+			}
+		}
+		catch(IOException e){
+			System.out.println("Exception saving snapshot " + target + ": " + e);
+			return false;
+		}
+		System.err.printf("Saved %d snapshot file(s) to %s in %.3f s%n", files, target, (System.nanoTime() - start) / 1e9);
+		return true;
+	}
+	
+	/**
+	* method that runs batch commands from a file (or stdin for "-") and then from the argument list, without any menus
+	* @param String commands file, "-" for stdin, or null for none
+	* @param ArrayList<String> commands given as arguments
+	* @param String results file, or null for stdout
+	* @param String text, csv, or json
+	* @return boolean true if every command ran
+	*/
+	public static boolean runBatch(String batchFile, ArrayList<String> commands, String outFile, String format){
+		long start = System.nanoTime();
+		try(PrintStream out = new PrintStream(new BufferedOutputStream(outFile == null ? new FileOutputStream(FileDescriptor.out) : new FileOutputStream(outFile), 1 << 16), false, "UTF-8")){
+			BatchRunner runner = new BatchRunner(out, format);
+			if(batchFile != null){
+				try(BufferedReader in = batchFile.equals("-") ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)) : Files.newBufferedReader(Paths.get(batchFile), StandardCharsets.UTF_8)){
+					runner.run(in);
+				}
+			}
+			runner.run(commands);
+			runner.flush();
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.err.printf("Ran %d batch commands (%d failed) in %.3f s: %.1f commands/s%n", runner.getCommandCount(), runner.getErrorCount(), seconds, runner.getCommandCount() / Math.max(seconds, 1e-9));
+			return runner.getErrorCount() == 0;
+		}
+		catch(IOException e){
+			System.err.println("Exception in runBatch method: " + e);
+			return false;
+		}
+	}
 }
\ No newline at end of file